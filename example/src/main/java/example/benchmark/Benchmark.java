@@ -0,0 +1,263 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package example.benchmark;
+
+import com.github.gregwhitaker.sqs.SqsPriorityClient;
+import com.github.gregwhitaker.sqs.SqsPriorityQueueBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Load-test harness that seeds the priority queues and measures end-to-end throughput and latency of
+ * the sqs-priority-client.
+ *
+ * <p>Options are passed as <code>--name=value</code> arguments:</p>
+ * <ul>
+ *   <li><code>target</code> - <code>memory</code> for an in-process stand-in or <code>localstack</code> (default: memory)</li>
+ *   <li><code>endpoint</code> - SQS endpoint used with the localstack target (default: http://localhost:4566)</li>
+ *   <li><code>apiLatencyMillis</code> - latency added to each call by the in-process stand-in (default: 5)</li>
+ *   <li><code>messagesDir</code> - directory containing the seed message files (default: localstack/messages)</li>
+ *   <li><code>weights</code> - comma-separated queue weights in seed file order (default: 0.80,0.15,0.05)</li>
+ *   <li><code>repeat</code> - number of times each seed file is published (default: 1)</li>
+ *   <li><code>seedConcurrency</code> - number of concurrent batch sends while seeding (default: 16)</li>
+ *   <li><code>pollers</code> - number of parallel consumers (default: 3)</li>
+ *   <li><code>maxMessages</code> - maximum number of messages per receive (default: 10)</li>
+ *   <li><code>handlerMillis</code> - simulated processing time per message (default: 0)</li>
+ *   <li><code>timeoutSeconds</code> - maximum duration of the consuming phase (default: 300)</li>
+ * </ul>
+ */
+public class Benchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(Benchmark.class);
+  private static final int MAX_BATCH_SIZE = 10;
+
+  public static void main(String... args) throws Exception {
+    final Map<String, String> options = parseOptions(args);
+
+    final String target = options.getOrDefault("target", "memory");
+    final int pollers = Integer.parseInt(options.getOrDefault("pollers", "3"));
+    final int maxMessages = Integer.parseInt(options.getOrDefault("maxMessages", "10"));
+    final long handlerMillis = Long.parseLong(options.getOrDefault("handlerMillis", "0"));
+    final int repeat = Integer.parseInt(options.getOrDefault("repeat", "1"));
+    final int seedConcurrency = Integer.parseInt(options.getOrDefault("seedConcurrency", "16"));
+    final Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeoutSeconds", "300")));
+
+    final MeteredSqsClient sqs = new MeteredSqsClient(createSqsClient(target, options));
+
+    // Load the seed messages and map each seed file to its queue and weight
+    final Map<String, List<String>> seedMessages = loadSeedMessages(Paths.get(options.getOrDefault("messagesDir", "localstack/messages")));
+    final Map<String, Double> weights = parseWeights(options.getOrDefault("weights", "0.80,0.15,0.05"), seedMessages.keySet());
+
+    final Map<String, String> queueUrls = new HashMap<>();
+    seedMessages.keySet().forEach(queueName -> queueUrls.put(queueName, sqs.createQueue(CreateQueueRequest.builder()
+            .queueName(queueName)
+            .build()).queueUrl()));
+
+    final BenchmarkStats stats = new BenchmarkStats(weights);
+
+    // Seed the queues concurrently using batched sends
+    final long seedStart = System.nanoTime();
+    seed(sqs, queueUrls, seedMessages, repeat, seedConcurrency, stats);
+    final double seedSeconds = (System.nanoTime() - seedStart) / 1_000_000_000.0;
+
+    System.out.printf("Seeded %d messages in %.2fs (%.1f msg/s) using %d SendMessageBatch calls%n",
+            stats.getSeeded(), seedSeconds, stats.getSeeded() / seedSeconds, sqs.getCalls().getOrDefault("SendMessageBatch", 0L));
+
+    // Only count the API calls made while consuming
+    sqs.reset();
+
+    final SqsPriorityQueueBuilder queueBuilder = SqsPriorityClient.builder(sqs)
+            .withMaxNumberOfMessages(maxMessages)
+            .withAttributeNames(MessageSystemAttributeName.SENT_TIMESTAMP.toString())
+            .withQueues();
+
+    weights.forEach(queueBuilder::queue);
+
+    final SqsPriorityClient sqsPriorityClient = queueBuilder.end().build();
+
+    System.out.printf("Consuming with %d poller(s), maxNumberOfMessages: %d, handler: %dms, target: %s%n",
+            pollers, maxMessages, handlerMillis, target);
+
+    stats.start();
+
+    Flux.range(1, pollers)
+            .parallel(pollers)
+            .runOn(Schedulers.boundedElastic())
+              .flatMap(integer -> sqsPriorityClient.receiveMessages())
+              .flatMap(message -> Mono.fromRunnable(() -> simulateWork(handlerMillis))
+                      .then(sqsPriorityClient.deleteMessage(message.receiptHandle()))
+                      .onErrorResume(throwable -> {
+                        LOG.error(throwable.getMessage());
+                        return Mono.empty();
+                      })
+                      .then(Mono.fromSupplier(() -> stats.processed(message))))
+            .sequential()
+            .filter(Boolean::booleanValue)
+            .take(stats.getSeeded())
+            .timeout(timeout)
+            .onErrorResume(throwable -> {
+              LOG.error("Benchmark did not complete: {}", throwable.getMessage());
+              return Flux.empty();
+            })
+            .blockLast();
+
+    System.out.println();
+    stats.report(System.out, sqs.getCalls());
+
+    sqs.close();
+  }
+
+  /**
+   * Creates the SQS client for the benchmark target.
+   */
+  private static SqsClient createSqsClient(final String target, final Map<String, String> options) {
+    switch (target) {
+      case "memory":
+        return new InMemorySqsClient(Duration.ofMillis(Long.parseLong(options.getOrDefault("apiLatencyMillis", "5"))));
+      case "localstack":
+        return SqsClient.builder()
+                .endpointOverride(URI.create(options.getOrDefault("endpoint", "http://localhost:4566")))
+                .build();
+      default:
+        throw new IllegalArgumentException(String.format("Unknown benchmark target [target: '%s']", target));
+    }
+  }
+
+  /**
+   * Sends every seed message to its queue in batches of 10, running the specified number of batches concurrently.
+   */
+  private static void seed(final SqsClient sqs,
+                           final Map<String, String> queueUrls,
+                           final Map<String, List<String>> seedMessages,
+                           final int repeat,
+                           final int concurrency,
+                           final BenchmarkStats stats) {
+    Flux.fromIterable(seedMessages.entrySet())
+            .flatMap(entry -> Flux.range(0, repeat)
+                    .flatMapIterable(i -> entry.getValue())
+                    .buffer(MAX_BATCH_SIZE)
+                    .map(batch -> new AbstractMap.SimpleEntry<>(entry.getKey(), batch)))
+            .flatMap(batch -> Mono.fromCallable(() -> sendBatch(sqs, batch.getKey(), queueUrls.get(batch.getKey()), batch.getValue(), stats))
+                    .subscribeOn(Schedulers.boundedElastic()), concurrency)
+            .blockLast();
+  }
+
+  private static SendMessageBatchResponse sendBatch(final SqsClient sqs,
+                                                    final String queueName,
+                                                    final String queueUrl,
+                                                    final List<String> bodies,
+                                                    final BenchmarkStats stats) {
+    final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(bodies.size());
+    for (int i = 0; i < bodies.size(); i++) {
+      entries.add(SendMessageBatchRequestEntry.builder()
+              .id(String.valueOf(i))
+              .messageBody(bodies.get(i))
+              .build());
+    }
+
+    final SendMessageBatchResponse response = sqs.sendMessageBatch(builder -> builder
+            .queueUrl(queueUrl)
+            .entries(entries));
+
+    response.successful().forEach(entry -> stats.seeded(entry.messageId(), queueName));
+    response.failed().forEach(entry -> LOG.warn("Unable to seed message [queueName: '{}', code: '{}']", queueName, entry.code()));
+
+    return response;
+  }
+
+  /**
+   * Loads the seed message files. Files are named <code>N-name-messages</code> and are published to
+   * the queue <code>name-queue</code>.
+   */
+  private static Map<String, List<String>> loadSeedMessages(final Path messagesDir) throws IOException {
+    final Map<String, List<String>> seedMessages = new LinkedHashMap<>();
+
+    try (Stream<Path> files = Files.list(messagesDir)) {
+      for (Path file : files.sorted().collect(Collectors.toList())) {
+        final String queueName = file.getFileName().toString()
+                .replaceFirst("^\\d+-", "")
+                .replaceFirst("-messages$", "-queue");
+
+        seedMessages.put(queueName, Files.readAllLines(file).stream()
+                .filter(line -> !line.trim().isEmpty())
+                .collect(Collectors.toList()));
+      }
+    }
+
+    return seedMessages;
+  }
+
+  private static Map<String, Double> parseWeights(final String weights, final Iterable<String> queueNames) {
+    final String[] values = weights.split(",");
+    final Map<String, Double> weightedQueues = new LinkedHashMap<>();
+
+    int idx = 0;
+    for (String queueName : queueNames) {
+      if (idx >= values.length) {
+        throw new IllegalArgumentException(String.format("No weight configured for queue [queueName: '%s']", queueName));
+      }
+
+      weightedQueues.put(queueName, Double.parseDouble(values[idx++].trim()));
+    }
+
+    return weightedQueues;
+  }
+
+  private static Map<String, String> parseOptions(final String... args) {
+    final Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException(String.format("Invalid option, expected --name=value [option: '%s']", arg));
+      }
+
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+
+    return options;
+  }
+
+  private static void simulateWork(final long handlerMillis) {
+    if (handlerMillis > 0) {
+      try {
+        Thread.sleep(handlerMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package example.benchmark;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-queue throughput and latency measurements for a benchmark run.
+ */
+public class BenchmarkStats {
+
+  private final Map<String, QueueStats> queues = new LinkedHashMap<>();
+  private final Map<String, String> messageQueues = new ConcurrentHashMap<>();
+  private final Set<String> processedIds = ConcurrentHashMap.newKeySet();
+  private final AtomicReference<Map<String, Long>> contendedCounts = new AtomicReference<>();
+  private final LongAdder untracked = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private volatile long startNanos;
+
+  /**
+   * Creates a new instance of {@link BenchmarkStats}.
+   *
+   * @param weights a {@link Map} of queue names to configured weights, in priority order
+   */
+  public BenchmarkStats(final Map<String, Double> weights) {
+    weights.forEach((queueName, weight) -> queues.put(queueName, new QueueStats(weight)));
+  }
+
+  /**
+   * Records that a message was seeded to a queue.
+   *
+   * @param messageId id of the sent message
+   * @param queueName name of the queue the message was sent to
+   */
+  public void seeded(final String messageId, final String queueName) {
+    messageQueues.put(messageId, queueName);
+    queues.get(queueName).seeded.increment();
+  }
+
+  /**
+   * Marks the start of the consuming phase.
+   */
+  public void start() {
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Records that a message has finished processing. Messages that are processed again after being redelivered are
+   * counted as duplicates rather than towards throughput and observed share.
+   *
+   * @param message processed message
+   * @return <code>true</code> if the message was seeded by this run and processed for the first time; otherwise
+   *         <code>false</code>
+   */
+  public boolean processed(final Message message) {
+    final String queueName = messageQueues.get(message.messageId());
+    if (queueName == null) {
+      untracked.increment();
+      return false;
+    }
+
+    if (!processedIds.add(message.messageId())) {
+      duplicates.increment();
+      return false;
+    }
+
+    final QueueStats stats = queues.get(queueName);
+    final String sentTimestamp = message.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+    if (sentTimestamp != null) {
+      stats.latencies.add(System.currentTimeMillis() - Long.parseLong(sentTimestamp));
+    }
+
+    stats.lastProcessedNanos.accumulateAndGet(System.nanoTime(), Math::max);
+    stats.processed.increment();
+
+    // Capture the mix of messages received while every queue still had a backlog
+    if (stats.processed.sum() >= stats.seeded.sum() && contendedCounts.get() == null) {
+      final Map<String, Long> counts = new LinkedHashMap<>();
+      queues.forEach((name, queueStats) -> counts.put(name, queueStats.processed.sum()));
+      contendedCounts.compareAndSet(null, counts);
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets the total number of messages seeded by this run.
+   *
+   * @return number of seeded messages
+   */
+  public long getSeeded() {
+    return queues.values().stream()
+            .mapToLong(stats -> stats.seeded.sum())
+            .sum();
+  }
+
+  /**
+   * Prints the benchmark report.
+   *
+   * @param out stream to print to
+   * @param apiCalls a {@link Map} of operation names to call counts made while consuming
+   */
+  public void report(final PrintStream out, final Map<String, Long> apiCalls) {
+    final long endNanos = System.nanoTime();
+    final long processed = queues.values().stream()
+            .mapToLong(stats -> stats.processed.sum())
+            .sum();
+
+    final double elapsedSeconds = (endNanos - startNanos) / 1_000_000_000.0;
+    out.printf("Processed %d messages in %.2fs (%.1f msg/s), %d duplicate(s), %d untracked%n",
+            processed, elapsedSeconds, processed / elapsedSeconds, duplicates.sum(), untracked.sum());
+    out.println();
+
+    // Observed share is taken from the window in which every queue still had messages waiting
+    final Map<String, Long> shareCounts = contendedCounts.get() != null ? contendedCounts.get() : new LinkedHashMap<>();
+    if (shareCounts.isEmpty()) {
+      queues.forEach((name, stats) -> shareCounts.put(name, stats.processed.sum()));
+    }
+
+    final long shareTotal = Math.max(1, shareCounts.values().stream().mapToLong(Long::longValue).sum());
+
+    out.printf("%-24s %8s %8s %10s %10s %10s %10s %10s %10s%n",
+            "Queue", "Weight", "Observed", "Messages", "msg/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)");
+
+    queues.forEach((name, stats) -> {
+      final long[] latencies = stats.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+      final double queueSeconds = Math.max(1, stats.lastProcessedNanos.get() - startNanos) / 1_000_000_000.0;
+
+      out.printf("%-24s %8.2f %8.2f %10d %10.1f %10d %10d %10d %10d%n",
+              name,
+              stats.weight,
+              shareCounts.getOrDefault(name, 0L) / (double) shareTotal,
+              stats.processed.sum(),
+              stats.processed.sum() / queueSeconds,
+              percentile(latencies, 0.50),
+              percentile(latencies, 0.90),
+              percentile(latencies, 0.99),
+              latencies.length > 0 ? latencies[latencies.length - 1] : 0);
+    });
+
+    out.println();
+
+    final long totalCalls = apiCalls.values().stream().mapToLong(Long::longValue).sum();
+    apiCalls.forEach((operation, count) -> out.printf("%-28s %10d%n", operation, count));
+    out.printf("%-28s %10.2f%n", "API calls per message", totalCalls / (double) Math.max(1, processed));
+  }
+
+  private static long percentile(final long[] sorted, final double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+
+    final int idx = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+  }
+
+  /**
+   * Measurements for a single queue.
+   */
+  private static class QueueStats {
+    private final double weight;
+    private final LongAdder seeded = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final AtomicLong lastProcessedNanos = new AtomicLong();
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    private QueueStats(final double weight) {
+      this.weight = weight;
+    }
+  }
+}
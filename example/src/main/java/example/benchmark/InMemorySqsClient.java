@@ -0,0 +1,319 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package example.benchmark;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for Amazon SQS that supports the operations used by the sqs-priority-client. Messages
+ * honor send delays and visibility timeouts, and every call can be slowed down by a fixed latency to approximate
+ * a network round trip.
+ */
+public class InMemorySqsClient implements SqsClient {
+  private static final String QUEUE_URL_PREFIX = "memory://sqs/";
+  private static final Duration VISIBILITY_TIMEOUT = Duration.ofSeconds(30);
+
+  private final Map<String, InMemoryQueue> queues = new ConcurrentHashMap<>();
+  private final Duration apiLatency;
+
+  /**
+   * Creates a new instance of {@link InMemorySqsClient}.
+   *
+   * @param apiLatency latency added to every call
+   */
+  public InMemorySqsClient(final Duration apiLatency) {
+    this.apiLatency = apiLatency;
+  }
+
+  @Override
+  public CreateQueueResponse createQueue(final CreateQueueRequest request) {
+    simulateLatency();
+    queues.computeIfAbsent(QUEUE_URL_PREFIX + request.queueName(), url -> new InMemoryQueue());
+    return CreateQueueResponse.builder()
+            .queueUrl(QUEUE_URL_PREFIX + request.queueName())
+            .build();
+  }
+
+  @Override
+  public GetQueueUrlResponse getQueueUrl(final GetQueueUrlRequest request) {
+    simulateLatency();
+    final String queueUrl = QUEUE_URL_PREFIX + request.queueName();
+    if (!queues.containsKey(queueUrl)) {
+      throw QueueDoesNotExistException.builder()
+              .message(String.format("Queue does not exist [queueName: '%s']", request.queueName()))
+              .build();
+    }
+
+    return GetQueueUrlResponse.builder()
+            .queueUrl(queueUrl)
+            .build();
+  }
+
+  @Override
+  public SendMessageBatchResponse sendMessageBatch(final SendMessageBatchRequest request) {
+    simulateLatency();
+    final InMemoryQueue queue = queue(request.queueUrl());
+
+    final List<SendMessageBatchResultEntry> results = new ArrayList<>(request.entries().size());
+    for (SendMessageBatchRequestEntry entry : request.entries()) {
+      final int delaySeconds = entry.delaySeconds() != null ? entry.delaySeconds() : 0;
+      final InMemoryMessage message = new InMemoryMessage(entry.messageBody(), entry.messageAttributes(), delaySeconds);
+      queue.visible.add(message);
+
+      results.add(SendMessageBatchResultEntry.builder()
+              .id(entry.id())
+              .messageId(message.messageId)
+              .build());
+    }
+
+    return SendMessageBatchResponse.builder()
+            .successful(results)
+            .failed(Collections.emptyList())
+            .build();
+  }
+
+  @Override
+  public ReceiveMessageResponse receiveMessage(final ReceiveMessageRequest request) {
+    simulateLatency();
+    final InMemoryQueue queue = queue(request.queueUrl());
+    queue.reapExpired();
+
+    final int maxNumberOfMessages = request.maxNumberOfMessages() != null ? request.maxNumberOfMessages() : 1;
+    final boolean withAttributes = request.hasAttributeNames();
+    final boolean withMessageAttributes = request.hasMessageAttributeNames();
+
+    final List<Message> messages = new ArrayList<>(maxNumberOfMessages);
+    while (messages.size() < maxNumberOfMessages) {
+      final InMemoryMessage message = queue.visible.poll();
+      if (message == null) {
+        break;
+      }
+
+      final String receiptHandle = message.receive();
+      queue.inFlight.put(receiptHandle, message);
+      messages.add(message.toMessage(receiptHandle, withAttributes, withMessageAttributes));
+    }
+
+    return ReceiveMessageResponse.builder()
+            .messages(messages)
+            .build();
+  }
+
+  @Override
+  public DeleteMessageResponse deleteMessage(final DeleteMessageRequest request) {
+    simulateLatency();
+    queue(request.queueUrl()).inFlight.remove(request.receiptHandle());
+    return DeleteMessageResponse.builder().build();
+  }
+
+  @Override
+  public DeleteMessageBatchResponse deleteMessageBatch(final DeleteMessageBatchRequest request) {
+    simulateLatency();
+    final InMemoryQueue queue = queue(request.queueUrl());
+
+    final List<DeleteMessageBatchResultEntry> results = new ArrayList<>(request.entries().size());
+    for (DeleteMessageBatchRequestEntry entry : request.entries()) {
+      queue.inFlight.remove(entry.receiptHandle());
+      results.add(DeleteMessageBatchResultEntry.builder()
+              .id(entry.id())
+              .build());
+    }
+
+    return DeleteMessageBatchResponse.builder()
+            .successful(results)
+            .failed(Collections.emptyList())
+            .build();
+  }
+
+  @Override
+  public ChangeMessageVisibilityBatchResponse changeMessageVisibilityBatch(final ChangeMessageVisibilityBatchRequest request) {
+    simulateLatency();
+    final InMemoryQueue queue = queue(request.queueUrl());
+
+    final List<ChangeMessageVisibilityBatchResultEntry> results = new ArrayList<>(request.entries().size());
+    for (ChangeMessageVisibilityBatchRequestEntry entry : request.entries()) {
+      final InMemoryMessage message = queue.inFlight.remove(entry.receiptHandle());
+      if (message != null) {
+        message.visibleAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(entry.visibilityTimeout());
+        queue.visible.add(message);
+      }
+
+      results.add(ChangeMessageVisibilityBatchResultEntry.builder()
+              .id(entry.id())
+              .build());
+    }
+
+    return ChangeMessageVisibilityBatchResponse.builder()
+            .successful(results)
+            .failed(Collections.emptyList())
+            .build();
+  }
+
+  @Override
+  public String serviceName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public void close() {
+    queues.clear();
+  }
+
+  private InMemoryQueue queue(final String queueUrl) {
+    final InMemoryQueue queue = queues.get(queueUrl);
+    if (queue == null) {
+      throw QueueDoesNotExistException.builder()
+              .message(String.format("Queue does not exist [queueUrl: '%s']", queueUrl))
+              .build();
+    }
+
+    return queue;
+  }
+
+  private void simulateLatency() {
+    if (!apiLatency.isZero()) {
+      try {
+        Thread.sleep(apiLatency.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Messages stored in a single queue.
+   */
+  private static class InMemoryQueue {
+    private final DelayQueue<InMemoryMessage> visible = new DelayQueue<>();
+    private final Map<String, InMemoryMessage> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns in-flight messages whose visibility timeout has expired to the queue.
+     */
+    private void reapExpired() {
+      final long now = System.currentTimeMillis();
+      inFlight.entrySet().removeIf(entry -> {
+        if (entry.getValue().visibleAt <= now) {
+          visible.add(entry.getValue());
+          return true;
+        }
+
+        return false;
+      });
+    }
+  }
+
+  /**
+   * Message stored in a queue.
+   */
+  private static class InMemoryMessage implements Delayed {
+    private final String messageId = UUID.randomUUID().toString();
+    private final String body;
+    private final Map<String, MessageAttributeValue> messageAttributes;
+    private final long sentTimestamp = System.currentTimeMillis();
+    private final AtomicInteger receiveCount = new AtomicInteger();
+    private volatile long firstReceiveTimestamp;
+    private volatile long visibleAt;
+
+    private InMemoryMessage(final String body,
+                            final Map<String, MessageAttributeValue> messageAttributes,
+                            final int delaySeconds) {
+      this.body = body;
+      this.messageAttributes = new HashMap<>(messageAttributes);
+      this.visibleAt = sentTimestamp + TimeUnit.SECONDS.toMillis(delaySeconds);
+    }
+
+    private String receive() {
+      final long now = System.currentTimeMillis();
+      if (receiveCount.getAndIncrement() == 0) {
+        firstReceiveTimestamp = now;
+      }
+
+      visibleAt = now + VISIBILITY_TIMEOUT.toMillis();
+      return UUID.randomUUID().toString();
+    }
+
+    private Message toMessage(final String receiptHandle, final boolean withAttributes, final boolean withMessageAttributes) {
+      final Message.Builder builder = Message.builder()
+              .messageId(messageId)
+              .receiptHandle(receiptHandle)
+              .body(body);
+
+      if (withAttributes) {
+        final Map<MessageSystemAttributeName, String> attributes = new EnumMap<>(MessageSystemAttributeName.class);
+        attributes.put(MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(sentTimestamp));
+        attributes.put(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, String.valueOf(receiveCount.get()));
+        attributes.put(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP, String.valueOf(firstReceiveTimestamp));
+        builder.attributes(attributes);
+      }
+
+      if (withMessageAttributes) {
+        builder.messageAttributes(messageAttributes);
+      }
+
+      return builder.build();
+    }
+
+    @Override
+    public long getDelay(final TimeUnit unit) {
+      return unit.convert(visibleAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(final Delayed other) {
+      return Long.compare(visibleAt, ((InMemoryMessage) other).visibleAt);
+    }
+  }
+}
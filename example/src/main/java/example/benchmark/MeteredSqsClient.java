@@ -0,0 +1,129 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package example.benchmark;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SqsClient} that counts the API calls made through it before delegating to another client.
+ */
+public class MeteredSqsClient implements SqsClient {
+
+  private final SqsClient delegate;
+  private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new instance of {@link MeteredSqsClient}.
+   *
+   * @param delegate client that executes the calls
+   */
+  public MeteredSqsClient(final SqsClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public CreateQueueResponse createQueue(final CreateQueueRequest request) {
+    record("CreateQueue");
+    return delegate.createQueue(request);
+  }
+
+  @Override
+  public GetQueueUrlResponse getQueueUrl(final GetQueueUrlRequest request) {
+    record("GetQueueUrl");
+    return delegate.getQueueUrl(request);
+  }
+
+  @Override
+  public SendMessageBatchResponse sendMessageBatch(final SendMessageBatchRequest request) {
+    record("SendMessageBatch");
+    return delegate.sendMessageBatch(request);
+  }
+
+  @Override
+  public ReceiveMessageResponse receiveMessage(final ReceiveMessageRequest request) {
+    record("ReceiveMessage");
+    return delegate.receiveMessage(request);
+  }
+
+  @Override
+  public DeleteMessageResponse deleteMessage(final DeleteMessageRequest request) {
+    record("DeleteMessage");
+    return delegate.deleteMessage(request);
+  }
+
+  @Override
+  public DeleteMessageBatchResponse deleteMessageBatch(final DeleteMessageBatchRequest request) {
+    record("DeleteMessageBatch");
+    return delegate.deleteMessageBatch(request);
+  }
+
+  @Override
+  public ChangeMessageVisibilityBatchResponse changeMessageVisibilityBatch(final ChangeMessageVisibilityBatchRequest request) {
+    record("ChangeMessageVisibilityBatch");
+    return delegate.changeMessageVisibilityBatch(request);
+  }
+
+  @Override
+  public String serviceName() {
+    return delegate.serviceName();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Gets the number of calls made per operation since the last reset.
+   *
+   * @return a {@link Map} of operation names to call counts
+   */
+  public Map<String, Long> getCalls() {
+    final Map<String, Long> snapshot = new TreeMap<>();
+    calls.forEach((operation, count) -> snapshot.put(operation, count.sum()));
+    return snapshot;
+  }
+
+  /**
+   * Resets all call counts.
+   */
+  public void reset() {
+    calls.clear();
+  }
+
+  private void record(final String operation) {
+    calls.computeIfAbsent(operation, k -> new LongAdder()).increment();
+  }
+}
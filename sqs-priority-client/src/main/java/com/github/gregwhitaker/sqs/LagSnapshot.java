@@ -0,0 +1,172 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs;
+
+import com.github.gregwhitaker.sqs.internal.LagHistogram;
+
+import java.time.Duration;
+
+/**
+ * Point-in-time view of how stale a priority queue is. Snapshots are cumulative since the client was created;
+ * subtract the counts of an earlier snapshot to look at a single interval.
+ */
+public class LagSnapshot {
+
+  private final String queueName;
+  private final int priority;
+  private final Distribution timeInQueue;
+  private final Distribution processingTime;
+
+  /**
+   * Creates a new instance of {@link LagSnapshot}.
+   *
+   * @param queueName queue name
+   * @param priority queue priority, higher values are higher priorities
+   * @param timeInQueue histogram of the time messages spent in the queue
+   * @param processingTime histogram of the time between receiving and deleting messages
+   */
+  LagSnapshot(final String queueName,
+              final int priority,
+              final LagHistogram timeInQueue,
+              final LagHistogram processingTime) {
+    this.queueName = queueName;
+    this.priority = priority;
+    this.timeInQueue = new Distribution(timeInQueue);
+    this.processingTime = new Distribution(processingTime);
+  }
+
+  /**
+   * Gets the name of the queue.
+   *
+   * @return queue name
+   */
+  public String getQueueName() {
+    return queueName;
+  }
+
+  /**
+   * Gets the priority of the queue. Higher values are higher priorities.
+   *
+   * @return queue priority
+   */
+  public int getPriority() {
+    return priority;
+  }
+
+  /**
+   * Gets the distribution of the time messages spent in the queue before they were first received.
+   *
+   * @return a {@link Distribution}
+   */
+  public Distribution getTimeInQueue() {
+    return timeInQueue;
+  }
+
+  /**
+   * Gets the distribution of the time between receiving and deleting messages.
+   *
+   * @return a {@link Distribution}
+   */
+  public Distribution getProcessingTime() {
+    return processingTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LagSnapshot [queueName: '%s', timeInQueue: %s, processingTime: %s]", queueName, timeInQueue, processingTime);
+  }
+
+  /**
+   * Distribution of durations recorded with millisecond resolution. Percentiles are accurate to about 3%.
+   */
+  public static class Distribution {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Distribution(final LagHistogram histogram) {
+      this.counts = histogram.getCounts();
+      this.sum = histogram.getSum();
+      this.max = histogram.getMax();
+
+      long total = 0;
+      for (long bucketCount : counts) {
+        total += bucketCount;
+      }
+
+      this.count = total;
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return count
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the mean of the recorded durations.
+     *
+     * @return mean duration
+     */
+    public Duration getMean() {
+      return count > 0 ? Duration.ofMillis(sum / count) : Duration.ZERO;
+    }
+
+    /**
+     * Gets the largest recorded duration.
+     *
+     * @return max duration
+     */
+    public Duration getMax() {
+      return Duration.ofMillis(max);
+    }
+
+    /**
+     * Gets the duration at or below which the specified percentage of the recorded durations fall.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return duration at the percentile
+     */
+    public Duration getPercentile(final double percentile) {
+      if (count == 0) {
+        return Duration.ZERO;
+      }
+
+      final long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Duration.ofMillis(Math.min(LagHistogram.highestValueAt(i), max));
+        }
+      }
+
+      return Duration.ofMillis(max);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("[count: %d, p50: %dms, p90: %dms, p99: %dms, max: %dms]",
+              count, getPercentile(50).toMillis(), getPercentile(90).toMillis(), getPercentile(99).toMillis(), max);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs;
+
+import java.time.Duration;
+
+/**
+ * Policy that determines how messages that are negatively acknowledged are retried.
+ */
+public class RetryPolicy {
+
+  /**
+   * Name of the message attribute used to track the number of times a message has been retried.
+   */
+  public static final String RETRY_COUNT_ATTRIBUTE = "sqs-priority-client.retry-count";
+
+  /**
+   * Maximum delay supported by SQS.
+   */
+  public static final Duration MAX_DELAY = Duration.ofMinutes(15);
+
+  private final Duration initialDelay;
+  private final Duration maxDelay;
+  private final int maxRetries;
+  private final boolean demote;
+
+  private RetryPolicy(final Duration initialDelay,
+                      final Duration maxDelay,
+                      final int maxRetries,
+                      final boolean demote) {
+    if (initialDelay == null || initialDelay.isNegative() || initialDelay.compareTo(MAX_DELAY) > 0) {
+      throw new IllegalArgumentException("Initial delay must be between 0 and 15 minutes");
+    }
+
+    if (maxDelay == null || maxDelay.compareTo(initialDelay) < 0 || maxDelay.compareTo(MAX_DELAY) > 0) {
+      throw new IllegalArgumentException("Max delay must be between the initial delay and 15 minutes");
+    }
+
+    if (maxRetries <= 0) {
+      throw new IllegalArgumentException("Max retries must be a positive integer");
+    }
+
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.maxRetries = maxRetries;
+    this.demote = demote;
+  }
+
+  /**
+   * Creates a policy that re-sends failed messages to the queue they were received from with an exponentially
+   * increasing delay.
+   *
+   * @param initialDelay delay before the first retry
+   * @param maxDelay maximum delay between retries (cannot exceed 15 minutes)
+   * @param maxRetries number of retries permitted before the message is considered exhausted
+   * @return a {@link RetryPolicy}
+   */
+  public static RetryPolicy backoff(final Duration initialDelay, final Duration maxDelay, final int maxRetries) {
+    return new RetryPolicy(initialDelay, maxDelay, maxRetries, false);
+  }
+
+  /**
+   * Creates a policy that re-sends failed messages to the next lower priority queue with a fixed delay. Messages
+   * that fail on the lowest priority queue are retried on that queue.
+   *
+   * @param delay delay before each retry
+   * @param maxRetries number of retries permitted before the message is considered exhausted
+   * @return a {@link RetryPolicy}
+   */
+  public static RetryPolicy demote(final Duration delay, final int maxRetries) {
+    return new RetryPolicy(delay, delay, maxRetries, true);
+  }
+
+  /**
+   * Gets the delay to apply to a message that has already been retried the specified number of times.
+   *
+   * @param retryCount number of times the message has already been retried
+   * @return retry delay
+   */
+  public Duration getDelay(final int retryCount) {
+    final long delayMillis = initialDelay.toMillis() << Math.min(retryCount, 20);
+    return delayMillis > maxDelay.toMillis() ? maxDelay : Duration.ofMillis(delayMillis);
+  }
+
+  /**
+   * Gets the delay before the first retry.
+   *
+   * @return initial delay
+   */
+  public Duration getInitialDelay() {
+    return initialDelay;
+  }
+
+  /**
+   * Gets the maximum delay between retries.
+   *
+   * @return max delay
+   */
+  public Duration getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Gets the number of retries permitted before a message is considered exhausted.
+   *
+   * @return max retries
+   */
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Checks whether failed messages are demoted to the next lower priority queue.
+   *
+   * @return <code>true</code> if messages are demoted; otherwise <code>false</code>
+   */
+  public boolean isDemote() {
+    return demote;
+  }
+}
@@ -15,48 +15,115 @@
  */
 package com.github.gregwhitaker.sqs;
 
+import com.github.gregwhitaker.sqs.internal.AdaptiveConcurrencyLimiter;
+import com.github.gregwhitaker.sqs.internal.CircuitBreaker;
+import com.github.gregwhitaker.sqs.internal.InFlightBudget;
+import com.github.gregwhitaker.sqs.internal.InFlightMessage;
+import com.github.gregwhitaker.sqs.internal.LagTracker;
+import com.github.gregwhitaker.sqs.internal.LatencyTargetQueueScheduler;
 import com.github.gregwhitaker.sqs.internal.PriorityQueueInfo;
+import com.github.gregwhitaker.sqs.internal.QueueScheduler;
+import com.github.gregwhitaker.sqs.internal.WeightedQueueScheduler;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
-import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
-import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SqsException;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * SQS client that receives messages from multiple queues based on weighted priority.
  */
-public class SqsPriorityClient {
+public class SqsPriorityClient implements AutoCloseable {
   private static final Logger LOG = LoggerFactory.getLogger(SqsPriorityClient.class);
-  private static final Random RAND = new Random(System.currentTimeMillis());
+  private static final int MAX_BATCH_SIZE = 10;
+  private static final int MAX_MESSAGE_ATTRIBUTES = 10;
+  private static final Duration IN_FLIGHT_WAIT = Duration.ofMillis(100);
+  private static final Duration NO_QUEUE_AVAILABLE_WAIT = Duration.ofSeconds(1);
+
+  // Returned by receive() only when the queue had no messages, so that a drained queue can be told apart from a
+  // receive that was skipped
+  private static final List<Message> DRAINED = Collections.unmodifiableList(new ArrayList<>(0));
 
   private final SqsPriorityClientConfig config;
   private final List<PriorityQueueInfo> queues = new ArrayList<>();
-  private final Cache<String, Integer> receiptHandleCache;
+  private final Cache<String, InFlightMessage> receiptHandleCache;
+  private final InFlightBudget inFlightBudget;
+  private final Map<String, String> inFlightReceiptHandles = new ConcurrentHashMap<>();
+  private final Set<ConcurrentPoll> concurrentPolls = ConcurrentHashMap.newKeySet();
+  private final List<String> attributeNames = new ArrayList<>();
+  private final List<String> messageAttributeNames = new ArrayList<>();
+  private String deadLetterQueueUrl;
+  private QueueScheduler scheduler;
+  private AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private Scheduler pollScheduler;
+  private LagTracker lagTracker;
+  private Duration noQueueAvailableWait = NO_QUEUE_AVAILABLE_WAIT;
+  private Disposable lagExport;
 
-  SqsPriorityClient(SqsPriorityClientConfig config) {
+  SqsPriorityClient(SqsPriorityClientConfig config, Map<String, String> queueUrls) {
     this.config = config;
-    this.receiptHandleCache = CacheBuilder.newBuilder()
-            .maximumSize(10_000)
-            .expireAfterWrite(Duration.ofMinutes(5))
+    this.inFlightBudget = new InFlightBudget(config.getMaxInFlightBytes());
+
+    // Messages leave the cache when they are acknowledged, redelivered or expire, which frees their share of the
+    // in-flight budget. The budget bounds the number of in-flight messages, so the cache is only capped by size
+    // when there is no budget; evicting unacknowledged messages would otherwise release bytes that are still in use.
+    final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(5));
+
+    if (config.getMaxInFlightBytes() <= 0) {
+      cacheBuilder.maximumSize(10_000);
+    }
+
+    this.receiptHandleCache = cacheBuilder
+            .<String, InFlightMessage>removalListener(notification -> {
+              final InFlightMessage inFlightMessage = notification.getValue();
+              if (inFlightMessage.getMessageId() != null) {
+                inFlightReceiptHandles.remove(inFlightMessage.getMessageId(), notification.getKey());
+              }
+
+              inFlightBudget.release(inFlightMessage.getSize());
+            })
             .build();
 
-    initialize();
+    initialize(queueUrls);
   }
 
   /**
@@ -85,6 +152,12 @@ public class SqsPriorityClient {
    * @return a {@link Flux} of {@link Message}
    */
   public Flux<Message> receiveMessages(final long count) {
+    if (concurrencyLimiter != null) {
+      // Prefetching one batch per poller keeps every poller busy without buffering more than that
+      return pollConcurrently(count)
+              .flatMapIterable(Function.identity(), concurrencyLimiter.getMaxLimit());
+    }
+
     return Flux.create(fluxSink -> {
       if (count < config.getMaxNumberOfMessages()) {
         Flux.error(new IllegalArgumentException("Requested message count must be greater than configured maxNumberOfMessages"));
@@ -92,35 +165,197 @@ public class SqsPriorityClient {
 
       final AtomicLong rxCnt = new AtomicLong();
 
-      while (rxCnt.get() + config.getMaxNumberOfMessages() <= count) {
+      while (rxCnt.get() + config.getMaxNumberOfMessages() <= count && !fluxSink.isCancelled()) {
+        receive(nextQueue()).forEach(message -> {
+          rxCnt.incrementAndGet();
+          fluxSink.next(message);
+        });
+      }
+
+      // Complete the stream after the specified number of messages have been emitted
+      fluxSink.complete();
+    });
+  }
+
+  /**
+   * Receives a stream of message batches that never completes. Each batch contains the messages returned by
+   * a single receive from one queue.
+   *
+   * @return a {@link Flux} of {@link List} of {@link Message}
+   */
+  public Flux<List<Message>> receiveBatches() {
+    return poll();
+  }
+
+  /**
+   * Receives a stream of message batches that never completes. Messages received from the same queue are
+   * coalesced into batches of the specified size. A partial batch is emitted when its queue returns no messages
+   * or when its oldest message has been waiting for longer than the max wait. Receives skipped while the in-flight
+   * budget is exhausted or the queue is being throttled do not count as the queue returning no messages. The max wait is checked between
+   * receives, so it can be exceeded by the duration of a receive. Coalescing always polls on the subscribing
+   * thread, even when adaptive concurrency is enabled.
+   *
+   * @param batchSize number of messages in each batch
+   * @param maxWait maximum time a message waits for its batch to fill
+   * @return a {@link Flux} of {@link List} of {@link Message}
+   */
+  public Flux<List<Message>> receiveBatches(final int batchSize, final Duration maxWait) {
+    if (batchSize <= 0) {
+      return Flux.error(new IllegalArgumentException("Batch size must be a positive integer"));
+    }
+
+    if (maxWait == null || maxWait.isNegative()) {
+      return Flux.error(new IllegalArgumentException("Max wait must be a non-negative duration"));
+    }
+
+    return Flux.create(fluxSink -> {
+      final Map<Integer, List<Message>> batches = new HashMap<>();
+      final Map<Integer, Long> batchStartTimes = new HashMap<>();
+
+      while (!fluxSink.isCancelled()) {
         final PriorityQueueInfo queue = nextQueue();
+        final List<Message> messages = receive(queue);
 
-        final ReceiveMessageRequest request = ReceiveMessageRequest.builder()
-                .queueUrl(queue.getQueueUrl())
-                .maxNumberOfMessages(config.getMaxNumberOfMessages())
-                .build();
-
-        final ReceiveMessageResponse receiveMessageResponse = config.getSqsClient().receiveMessage(request);
-
-        if (receiveMessageResponse.hasMessages()) {
-          receiveMessageResponse.messages().forEach(message -> {
-            receiptHandleCache.put(message.receiptHandle(), queue.getIndex());
-            rxCnt.incrementAndGet();
-            fluxSink.next(message);
-          });
-        } else {
-          // No messages received
-          if (queue.getEmptyReceiveCnt().sum() == config.getMaxEmptyReceiveCount()) {
-            queue.timeout(config.getEmptyReceiveTimeout());
-          } else {
-            queue.incrementEmptyReceive();
+        final List<Message> batch = batches.computeIfAbsent(queue.getIndex(), k -> new ArrayList<>(batchSize));
+        if (batch.isEmpty() && !messages.isEmpty()) {
+          batchStartTimes.put(queue.getIndex(), System.currentTimeMillis());
+        }
+
+        batch.addAll(messages);
+
+        // Emit full batches
+        while (batch.size() >= batchSize) {
+          final List<Message> fullBatch = batch.subList(0, batchSize);
+          fluxSink.next(new ArrayList<>(fullBatch));
+          fullBatch.clear();
+          batchStartTimes.put(queue.getIndex(), System.currentTimeMillis());
+        }
+
+        // Emit the partial batch of a queue that has been drained, but not when the receive was only skipped
+        if (messages == DRAINED && !batch.isEmpty()) {
+          fluxSink.next(new ArrayList<>(batch));
+          batch.clear();
+        }
+
+        // Emit partial batches that have waited too long to fill
+        final long now = System.currentTimeMillis();
+        batches.forEach((idx, pendingBatch) -> {
+          if (!pendingBatch.isEmpty() && now - batchStartTimes.get(idx) >= maxWait.toMillis()) {
+            fluxSink.next(new ArrayList<>(pendingBatch));
+            pendingBatch.clear();
           }
+        });
+      }
+    });
+  }
+
+  /**
+   * Polls a queue for messages.
+   *
+   * @param queue queue to poll
+   * @return the messages to emit to subscribers
+   */
+  private List<Message> receive(final PriorityQueueInfo queue) {
+    return receive(queue, config.getMaxNumberOfMessages());
+  }
+
+  /**
+   * Polls a queue for up to the specified number of messages.
+   *
+   * @param queue queue to poll
+   * @param maxNumberOfMessages maximum number of messages to receive
+   * @return the messages to emit to subscribers, or {@link #DRAINED} if the queue had no messages
+   */
+  private List<Message> receive(final PriorityQueueInfo queue, final int maxNumberOfMessages) {
+    // Stop polling while the payloads of received but unacknowledged messages exceed the in-flight budget
+    if (inFlightBudget.isExhausted()) {
+      receiptHandleCache.cleanUp();
+
+      if (!inFlightBudget.awaitCapacity(IN_FLIGHT_WAIT)) {
+        return Collections.emptyList();
+      }
+    }
+
+    final ReceiveMessageRequest.Builder requestBuilder = ReceiveMessageRequest.builder()
+            .queueUrl(queue.getQueueUrl())
+            .maxNumberOfMessages(maxNumberOfMessages);
+
+    if (!attributeNames.isEmpty()) {
+      requestBuilder.attributeNamesWithStrings(attributeNames);
+    }
+
+    if (!messageAttributeNames.isEmpty()) {
+      requestBuilder.messageAttributeNames(messageAttributeNames);
+    }
+
+    final ReceiveMessageRequest request = requestBuilder.build();
+
+    final ReceiveMessageResponse receiveMessageResponse;
+    if (concurrencyLimiter != null) {
+      final CircuitBreaker circuitBreaker = queue.getCircuitBreaker();
+      if (!circuitBreaker.allowRequest()) {
+        // Another poller is probing the queue
+        return Collections.emptyList();
+      }
+
+      final long start = System.nanoTime();
+      try {
+        receiveMessageResponse = config.getSqsClient().receiveMessage(request);
+      } catch (SqsException e) {
+        if (!isThrottled(e)) {
+          circuitBreaker.releaseProbe();
+          throw e;
         }
+
+        // Back off instead of failing the stream, the circuit breaker skips the queue if throttling persists
+        LOG.warn("Receive throttled [queueName: '{}', statusCode: {}]", queue.getQueueName(), e.statusCode());
+        concurrencyLimiter.onThrottle();
+        circuitBreaker.onFailure();
+        return Collections.emptyList();
+      } catch (RuntimeException e) {
+        circuitBreaker.releaseProbe();
+        throw e;
       }
 
-      // Complete the stream after the specified number of messages have been emitted
-      fluxSink.complete();
-    });
+      concurrencyLimiter.onSuccess(System.nanoTime() - start, receiveMessageResponse.messages().size() >= maxNumberOfMessages);
+      circuitBreaker.onSuccess();
+    } else {
+      receiveMessageResponse = config.getSqsClient().receiveMessage(request);
+    }
+
+    scheduler.onReceive(queue, receiveMessageResponse.messages());
+
+    if (receiveMessageResponse.hasMessages()) {
+      final List<Message> messages = divertPoisonMessages(queue, receiveMessageResponse.messages());
+      messages.forEach(message -> {
+        if (lagTracker != null) {
+          lagTracker.onReceive(queue, message);
+        }
+
+        final long size = InFlightMessage.sizeOf(message);
+        inFlightBudget.acquire(size);
+        receiptHandleCache.put(message.receiptHandle(), new InFlightMessage(message.messageId(), queue.getIndex(), size));
+
+        if (message.messageId() != null) {
+          // A message that is received again has outlived its visibility timeout, so its earlier receipt is stale
+          final String staleReceiptHandle = inFlightReceiptHandles.put(message.messageId(), message.receiptHandle());
+          if (staleReceiptHandle != null && !staleReceiptHandle.equals(message.receiptHandle())) {
+            receiptHandleCache.invalidate(staleReceiptHandle);
+          }
+        }
+      });
+      return messages;
+    } else {
+      // No messages received
+      // Concurrent pollers can push the count past the limit, so it must not be compared for equality
+      if (queue.getEmptyReceiveCnt().sum() >= config.getMaxEmptyReceiveCount()) {
+        queue.timeout(emptyReceiveTimeout(queue));
+      } else {
+        queue.incrementEmptyReceive();
+      }
+
+      return DRAINED;
+    }
   }
 
   /**
@@ -131,14 +366,19 @@ public class SqsPriorityClient {
    */
   public Mono<Void> deleteMessage(final String receiptHandle) {
     return Mono.fromSupplier(() -> {
-      final Integer idx = receiptHandleCache.getIfPresent(receiptHandle);
-      if (idx != null) {
+      final InFlightMessage inFlightMessage = receiptHandleCache.getIfPresent(receiptHandle);
+      if (inFlightMessage != null) {
+        final int idx = inFlightMessage.getQueueIndex();
         try {
           config.getSqsClient().deleteMessage(DeleteMessageRequest.builder()
                   .receiptHandle(receiptHandle)
                   .queueUrl(queues.get(idx).getQueueUrl())
                   .build());
 
+          if (lagTracker != null) {
+            lagTracker.onDelete(inFlightMessage);
+          }
+
           receiptHandleCache.invalidate(receiptHandle);
         } catch (Exception e) {
           LOG.error("Unable to delete message. [receiptHandle: '{}', queueUrl: '{}']", receiptHandle, queues.get(idx).getQueueUrl());
@@ -151,28 +391,471 @@ public class SqsPriorityClient {
   }
 
   /**
-   * Selects the next queue from which to poll for messages.
+   * Deletes messages from their queues using batched deletes.
    *
-   * @return the {@link PriorityQueueInfo} for the next queue
+   * @param messages messages to delete
+   * @return a {@link Mono} of {@link Void}
    */
-  private PriorityQueueInfo nextQueue() {
-    final double nextRand = RAND.nextDouble();
+  public Mono<Void> deleteMessages(final List<Message> messages) {
+    return Mono.fromSupplier(() -> {
+      // Group the messages by the queue they were received from
+      final Map<Integer, List<String>> receiptHandlesByQueue = new LinkedHashMap<>();
+      for (Message message : messages) {
+        final InFlightMessage inFlightMessage = receiptHandleCache.getIfPresent(message.receiptHandle());
+        if (inFlightMessage != null) {
+          receiptHandlesByQueue.computeIfAbsent(inFlightMessage.getQueueIndex(), k -> new ArrayList<>()).add(message.receiptHandle());
+        }
+      }
 
-    while (true) {
-      // Select queue based on random threshold value
-      PriorityQueueInfo nextQueue = null;
-      for (PriorityQueueInfo queueInfo : queues) {
-        if (nextRand >= queueInfo.getThreshold()) {
-          nextQueue = queueInfo;
-          break;
+      int failedCnt = 0;
+      for (Map.Entry<Integer, List<String>> entry : receiptHandlesByQueue.entrySet()) {
+        final String queueUrl = queues.get(entry.getKey()).getQueueUrl();
+
+        for (List<String> batch : Lists.partition(entry.getValue(), MAX_BATCH_SIZE)) {
+          final List<DeleteMessageBatchRequestEntry> deleteEntries = new ArrayList<>(batch.size());
+          for (int i = 0; i < batch.size(); i++) {
+            deleteEntries.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .receiptHandle(batch.get(i))
+                    .build());
+          }
+
+          try {
+            final DeleteMessageBatchResponse response = config.getSqsClient().deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(deleteEntries)
+                    .build());
+
+            response.successful().forEach(result -> {
+              final String receiptHandle = batch.get(Integer.parseInt(result.id()));
+              final InFlightMessage inFlightMessage = receiptHandleCache.getIfPresent(receiptHandle);
+              if (lagTracker != null && inFlightMessage != null) {
+                lagTracker.onDelete(inFlightMessage);
+              }
+
+              receiptHandleCache.invalidate(receiptHandle);
+            });
+            response.failed().forEach(result ->
+                    LOG.error("Unable to delete message. [receiptHandle: '{}', queueUrl: '{}', code: '{}']", batch.get(Integer.parseInt(result.id())), queueUrl, result.code()));
+
+            failedCnt += response.failed().size();
+          } catch (Exception e) {
+            LOG.error("Unable to delete messages. [queueUrl: '{}']", queueUrl);
+            throw new RuntimeException(String.format("Unable to delete messages. [queueUrl: '%s']", queueUrl), e);
+          }
         }
       }
 
-      // In the event no queue was selected above then select the highest priority queue
-      if (nextQueue == null) {
-        nextQueue = queues.get(queues.size() - 1);
+      if (failedCnt > 0) {
+        throw new RuntimeException(String.format("Unable to delete %d message(s)", failedCnt));
+      }
+
+      return null;
+    });
+  }
+
+  /**
+   * Gets a snapshot of the lag of every queue, keyed by queue name in priority order from lowest to highest.
+   *
+   * @return a {@link Map} of queue names to {@link LagSnapshot}, or an empty map if lag tracking is disabled
+   */
+  public Map<String, LagSnapshot> getLagSnapshots() {
+    final Map<String, LagSnapshot> snapshots = new LinkedHashMap<>();
+    if (lagTracker != null) {
+      queues.forEach(queue -> snapshots.put(queue.getQueueName(), new LagSnapshot(queue.getQueueName(),
+              queue.getIndex(),
+              lagTracker.getTimeInQueue(queue),
+              lagTracker.getProcessingTime(queue))));
+    }
+
+    return snapshots;
+  }
+
+  /**
+   * Stops the periodic export of lag snapshots and the pollers used with adaptive concurrency. Streams received by
+   * those pollers complete, and receiving with adaptive concurrency fails once the client is closed. The {@link software.amazon.awssdk.services.sqs.SqsClient} supplied to the
+   * builder is not closed, as it is owned by the caller.
+   */
+  @Override
+  public void close() {
+    if (lagExport != null) {
+      lagExport.dispose();
+    }
+
+    if (pollScheduler != null) {
+      concurrentPolls.forEach(ConcurrentPoll::complete);
+      pollScheduler.dispose();
+    }
+  }
+
+  /**
+   * Negatively acknowledges a message that could not be processed. The message is retried according to the
+   * configured {@link RetryPolicy}.
+   *
+   * @param message message that failed processing
+   * @return a {@link Mono} of {@link Void}
+   */
+  public Mono<Void> nackMessage(final Message message) {
+    return nackMessages(Collections.singletonList(message));
+  }
+
+  /**
+   * Negatively acknowledges messages that could not be processed. The messages are retried according to the
+   * configured {@link RetryPolicy} using batched sends and deletes.
+   *
+   * @param messages messages that failed processing
+   * @return a {@link Mono} of {@link Void}
+   */
+  public Mono<Void> nackMessages(final List<Message> messages) {
+    return Mono.fromSupplier(() -> {
+      // Group the messages by the queue they were received from
+      final Map<Integer, List<Message>> messagesByQueue = new LinkedHashMap<>();
+      for (Message message : messages) {
+        final InFlightMessage inFlightMessage = receiptHandleCache.getIfPresent(message.receiptHandle());
+        if (inFlightMessage != null) {
+          messagesByQueue.computeIfAbsent(inFlightMessage.getQueueIndex(), k -> new ArrayList<>()).add(message);
+        }
+      }
+
+      int failedCnt = 0;
+      for (Map.Entry<Integer, List<Message>> entry : messagesByQueue.entrySet()) {
+        final PriorityQueueInfo queue = queues.get(entry.getKey());
+        try {
+          // Messages that could not be retried stay in flight so that they can be nacked or deleted again
+          final List<Message> retried = retryMessages(queue, entry.getValue());
+          retried.forEach(message -> receiptHandleCache.invalidate(message.receiptHandle()));
+
+          failedCnt += entry.getValue().size() - retried.size();
+        } catch (Exception e) {
+          LOG.error("Unable to nack messages. [queueUrl: '{}']", queue.getQueueUrl());
+          throw new RuntimeException(String.format("Unable to nack messages. [queueUrl: '%s']", queue.getQueueUrl()), e);
+        }
       }
 
+      if (failedCnt > 0) {
+        throw new RuntimeException(String.format("Unable to nack %d message(s)", failedCnt));
+      }
+
+      return null;
+    });
+  }
+
+  /**
+   * Polls the queues until the returned stream is cancelled. When adaptive concurrency is enabled polling is
+   * spread over a pool of pollers; otherwise polling runs on the subscribing thread.
+   *
+   * @return a {@link Flux} of {@link List} of {@link Message}
+   */
+  private Flux<List<Message>> poll() {
+    if (concurrencyLimiter != null) {
+      return pollConcurrently(Long.MAX_VALUE);
+    }
+
+    return Flux.create(fluxSink -> {
+      while (!fluxSink.isCancelled()) {
+        final List<Message> messages = receive(nextQueue());
+        if (!messages.isEmpty()) {
+          fluxSink.next(messages);
+        }
+      }
+    });
+  }
+
+  /**
+   * Polls the queues concurrently on the poller scheduler of the client. Each poller performs a single receive, and
+   * pollers are only started while fewer than the current concurrency limit are running and subscribers have
+   * requested more batches than are already being received, so messages never pile up behind a slow subscriber.
+   * Each receive is capped to the number of messages still to be received, and the stream completes once the
+   * specified number has been emitted.
+   *
+   * @param count number of messages to receive
+   * @return a {@link Flux} of {@link List} of {@link Message}
+   */
+  private Flux<List<Message>> pollConcurrently(final long count) {
+    return Flux.create(fluxSink -> new ConcurrentPoll(fluxSink, count).start());
+  }
+
+  /**
+   * Reserves up to the specified number of the messages that are still to be received.
+   *
+   * @param unreserved number of messages still to be received and not yet reserved by a poller
+   * @param max maximum number of messages to reserve
+   * @return the number of messages reserved
+   */
+  private static int reserve(final AtomicLong unreserved, final int max) {
+    while (true) {
+      final long available = unreserved.get();
+      final int reserved = (int) Math.min(available, max);
+      if (reserved == 0 || unreserved.compareAndSet(available, available - reserved)) {
+        return reserved;
+      }
+    }
+  }
+
+  /**
+   * Checks whether a receive failed because SQS is throttling requests or is temporarily unavailable.
+   *
+   * @param e exception thrown by the receive
+   * @return <code>true</code> if the receive should be retried later; otherwise <code>false</code>
+   */
+  private static boolean isThrottled(final SqsException e) {
+    if (e.isThrottlingException() || e.statusCode() >= 500) {
+      return true;
+    }
+
+    return e.awsErrorDetails() != null && "OverLimit".equals(e.awsErrorDetails().errorCode());
+  }
+
+  /**
+   * Retries failed messages according to the configured {@link RetryPolicy}. Messages that have exhausted their
+   * retries are diverted to the dead-letter queue if one is configured; otherwise they are released back to the
+   * queue they were received from. Messages whose retry count cannot be read or that have no room left for the
+   * retry count attribute are treated as exhausted, since resending them would fail every time.
+   *
+   * @param queue queue the messages were received from
+   * @param messages messages that failed processing
+   * @return the messages that were retried, moved or released
+   */
+  private List<Message> retryMessages(final PriorityQueueInfo queue, final List<Message> messages) {
+    final RetryPolicy retryPolicy = config.getRetryPolicy();
+    if (retryPolicy == null) {
+      return releaseMessages(queue, messages);
+    }
+
+    final List<Message> retried = new ArrayList<>(messages.size());
+
+    final List<Message> retryable = new ArrayList<>(messages.size());
+    final List<Message> exhausted = new ArrayList<>();
+    for (Message message : messages) {
+      if (retryCount(message) < retryPolicy.getMaxRetries() && canTrackRetries(message)) {
+        retryable.add(message);
+      } else {
+        exhausted.add(message);
+      }
+    }
+
+    if (!retryable.isEmpty()) {
+      // Demoted messages are sent to the next lower priority queue; the lowest priority queue retries in place
+      final PriorityQueueInfo targetQueue = retryPolicy.isDemote() && queue.getIndex() > 0
+              ? queues.get(queue.getIndex() - 1)
+              : queue;
+
+      retried.addAll(moveMessages(queue.getQueueUrl(), targetQueue.getQueueUrl(), retryable, message -> {
+        final int retryCount = retryCount(message);
+
+        final Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(message.messageAttributes());
+        messageAttributes.put(RetryPolicy.RETRY_COUNT_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("Number")
+                .stringValue(String.valueOf(retryCount + 1))
+                .build());
+
+        return SendMessageBatchRequestEntry.builder()
+                .messageBody(message.body())
+                .messageAttributes(messageAttributes)
+                .delaySeconds((int) retryPolicy.getDelay(retryCount).getSeconds());
+      }));
+    }
+
+    if (!exhausted.isEmpty()) {
+      if (deadLetterQueueUrl != null) {
+        retried.addAll(moveMessages(queue.getQueueUrl(), deadLetterQueueUrl, exhausted, SqsPriorityClient::copyOf));
+      } else {
+        retried.addAll(releaseMessages(queue, exhausted));
+      }
+    }
+
+    return retried;
+  }
+
+  /**
+   * Makes messages immediately visible again on the queue they were received from.
+   *
+   * @param queue queue the messages were received from
+   * @param messages messages to release
+   * @return the messages that were released
+   */
+  private List<Message> releaseMessages(final PriorityQueueInfo queue, final List<Message> messages) {
+    final List<Message> released = new ArrayList<>(messages.size());
+
+    for (List<Message> batch : Lists.partition(messages, MAX_BATCH_SIZE)) {
+      final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                .id(String.valueOf(i))
+                .receiptHandle(batch.get(i).receiptHandle())
+                .visibilityTimeout(0)
+                .build());
+      }
+
+      final ChangeMessageVisibilityBatchResponse response = config.getSqsClient().changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+              .queueUrl(queue.getQueueUrl())
+              .entries(entries)
+              .build());
+
+      response.failed().forEach(entry ->
+              LOG.warn("Unable to release message [queueUrl: '{}', code: '{}', message: '{}']", queue.getQueueUrl(), entry.code(), entry.message()));
+
+      response.successful().forEach(entry -> released.add(batch.get(Integer.parseInt(entry.id()))));
+    }
+
+    return released;
+  }
+
+  /**
+   * Gets the number of times a message has been retried by this client.
+   *
+   * @param message message
+   * @return retry count, or {@link Integer#MAX_VALUE} if the retry count attribute is not a valid number
+   */
+  private static int retryCount(final Message message) {
+    final MessageAttributeValue value = message.messageAttributes().get(RetryPolicy.RETRY_COUNT_ATTRIBUTE);
+    if (value == null) {
+      return 0;
+    }
+
+    try {
+      return Integer.parseInt(value.stringValue());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid retry count [messageId: '{}', retryCount: '{}']", message.messageId(), value.stringValue());
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Checks whether the retry count attribute can be set on a message without exceeding the SQS limit on message
+   * attributes.
+   *
+   * @param message message
+   * @return <code>true</code> if the message already has the attribute or has room for it; otherwise <code>false</code>
+   */
+  private static boolean canTrackRetries(final Message message) {
+    return message.messageAttributes().containsKey(RetryPolicy.RETRY_COUNT_ATTRIBUTE)
+            || message.messageAttributes().size() < MAX_MESSAGE_ATTRIBUTES;
+  }
+
+  /**
+   * Creates a send entry that copies the body and attributes of a message.
+   *
+   * @param message message to copy
+   * @return a {@link SendMessageBatchRequestEntry.Builder}
+   */
+  private static SendMessageBatchRequestEntry.Builder copyOf(final Message message) {
+    return SendMessageBatchRequestEntry.builder()
+            .messageBody(message.body())
+            .messageAttributes(message.messageAttributes());
+  }
+
+  /**
+   * Moves messages that have exceeded the configured max receive count to the dead-letter queue so that
+   * they never reach subscribers.
+   *
+   * @param queue queue the messages were received from
+   * @param messages received messages
+   * @return the messages that should be emitted to subscribers
+   */
+  private List<Message> divertPoisonMessages(final PriorityQueueInfo queue, final List<Message> messages) {
+    if (deadLetterQueueUrl == null) {
+      return messages;
+    }
+
+    final List<Message> accepted = new ArrayList<>(messages.size());
+    final List<Message> poison = new ArrayList<>();
+    for (Message message : messages) {
+      final String receiveCount = message.attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT);
+      if (receiveCount != null && Integer.parseInt(receiveCount) > config.getMaxReceiveCount()) {
+        poison.add(message);
+      } else {
+        accepted.add(message);
+      }
+    }
+
+    if (!poison.isEmpty()) {
+      LOG.warn("Diverting {} message(s) to dead-letter queue [queueName: '{}', deadLetterQueueName: '{}']",
+              poison.size(), queue.getQueueName(), config.getDeadLetterQueueName());
+
+      try {
+        moveMessages(queue.getQueueUrl(), deadLetterQueueUrl, poison, SqsPriorityClient::copyOf);
+      } catch (SqsException e) {
+        // Messages that could not be moved will become visible again and be diverted on a later receive
+        LOG.error("Unable to divert messages to dead-letter queue [queueUrl: '{}', deadLetterQueueUrl: '{}']", queue.getQueueUrl(), deadLetterQueueUrl, e);
+      }
+    }
+
+    return accepted;
+  }
+
+  /**
+   * Moves messages from one queue to another by sending copies to the target queue in batches and then
+   * deleting the originals that were sent successfully from the source queue. A message counts as moved only
+   * once its copy has been sent and its original deleted.
+   *
+   * @param sourceQueueUrl url of the queue the messages were received from
+   * @param targetQueueUrl url of the queue to send the messages to
+   * @param messages messages to move
+   * @param entryFactory creates the send entry for a message; the entry id is assigned by this method
+   * @return the messages that were moved
+   */
+  private List<Message> moveMessages(final String sourceQueueUrl,
+                                     final String targetQueueUrl,
+                                     final List<Message> messages,
+                                     final Function<Message, SendMessageBatchRequestEntry.Builder> entryFactory) {
+    final List<Message> moved = new ArrayList<>(messages.size());
+
+    for (List<Message> batch : Lists.partition(messages, MAX_BATCH_SIZE)) {
+      final List<SendMessageBatchRequestEntry> sendEntries = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        sendEntries.add(entryFactory.apply(batch.get(i))
+                .id(String.valueOf(i))
+                .build());
+      }
+
+      final SendMessageBatchResponse sendResponse = config.getSqsClient().sendMessageBatch(SendMessageBatchRequest.builder()
+              .queueUrl(targetQueueUrl)
+              .entries(sendEntries)
+              .build());
+
+      sendResponse.failed().forEach(entry ->
+              LOG.warn("Unable to send message [queueUrl: '{}', code: '{}', message: '{}']", targetQueueUrl, entry.code(), entry.message()));
+
+      final List<Message> sent = sendResponse.successful().stream()
+              .map(entry -> batch.get(Integer.parseInt(entry.id())))
+              .collect(Collectors.toList());
+
+      if (sent.isEmpty()) {
+        continue;
+      }
+
+      final List<DeleteMessageBatchRequestEntry> deleteEntries = new ArrayList<>(sent.size());
+      for (int i = 0; i < sent.size(); i++) {
+        deleteEntries.add(DeleteMessageBatchRequestEntry.builder()
+                .id(String.valueOf(i))
+                .receiptHandle(sent.get(i).receiptHandle())
+                .build());
+      }
+
+      final DeleteMessageBatchResponse deleteResponse = config.getSqsClient().deleteMessageBatch(DeleteMessageBatchRequest.builder()
+              .queueUrl(sourceQueueUrl)
+              .entries(deleteEntries)
+              .build());
+
+      deleteResponse.failed().forEach(entry ->
+              LOG.warn("Unable to delete moved message [queueUrl: '{}', code: '{}', message: '{}']", sourceQueueUrl, entry.code(), entry.message()));
+
+      deleteResponse.successful().forEach(entry -> moved.add(sent.get(Integer.parseInt(entry.id()))));
+    }
+
+    return moved;
+  }
+
+  /**
+   * Selects the next queue from which to poll for messages.
+   *
+   * @return the {@link PriorityQueueInfo} for the next queue
+   */
+  private PriorityQueueInfo nextQueue() {
+    while (true) {
+      final PriorityQueueInfo nextQueue = scheduler.select();
+
       if (nextQueue.isAvailable()) {
         return nextQueue;
       } else {
@@ -188,7 +871,7 @@ public class SqsPriorityClient {
           if (tmpNextQueue.getIndex() == nextQueue.getIndex()) {
             try {
               // In the event no queues are available sleep for a short period to prevent AWS rate-limiting
-              Thread.sleep(1_000);
+              Thread.sleep(noQueueAvailableWait.toMillis());
             } catch (InterruptedException e) {
               throw new RuntimeException(e);
             }
@@ -207,25 +890,248 @@ public class SqsPriorityClient {
 
   /**
    * Initializes the client.
+   *
+   * @param queueUrls a {@link Map} of queue names to resolved queue urls
    */
-  private void initialize() {
-    // Initialize the priority queues managed by the client
-    int curIdx = 0;
-    for (Map.Entry<String, Double> entry : config.getWeightedQueues().entrySet()) {
-      try {
+  private void initialize(final Map<String, String> queueUrls) {
+    if (config.getMaxConcurrency() > 0) {
+      this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(config.getMinConcurrency(), config.getMaxConcurrency());
+
+      // Pollers get their own threads so that they can neither exhaust nor wait on the shared Reactor schedulers
+      this.pollScheduler = Schedulers.newBoundedElastic(config.getMaxConcurrency(), Integer.MAX_VALUE, "sqs-priority-client-poller", 60, true);
+    }
+
+    if (config.getLatencyTargets().isEmpty()) {
+      // Initialize the priority queues managed by the client
+      int curIdx = 0;
+      for (Map.Entry<String, Double> entry : config.getWeightedQueues().entrySet()) {
         final String queueName = entry.getKey();
         final Double weight = entry.getValue();
 
-        final GetQueueUrlResponse response = config.getSqsClient().getQueueUrl(GetQueueUrlRequest.builder()
-                .queueName(queueName)
-                .build());
+        this.queues.add(new PriorityQueueInfo(curIdx, queueName, queueUrls.get(queueName), weight, 1.0 - weight, newCircuitBreaker()));
+        curIdx++;
+      }
+
+      this.scheduler = new WeightedQueueScheduler(queues);
+    } else {
+      // Initialize the queues managed by the client with their starting share of polls
+      final List<Duration> targetLatencies = new ArrayList<>(config.getLatencyTargets().values());
+      final double[] initialShares = LatencyTargetQueueScheduler.initialShares(targetLatencies);
 
-        this.queues.add(new PriorityQueueInfo(curIdx, queueName, response.queueUrl(), weight, 1.0 - weight));
+      int curIdx = 0;
+      for (String queueName : config.getLatencyTargets().keySet()) {
+        this.queues.add(new PriorityQueueInfo(curIdx, queueName, queueUrls.get(queueName), initialShares[curIdx], 1.0 - initialShares[curIdx], newCircuitBreaker()));
         curIdx++;
-      } catch (SqsException e) {
-        LOG.error("Unable to initialize queue [queueName: '{}']", entry.getKey());
-        throw new RuntimeException(String.format("Unable to initialize queue [queueName: '%s']", entry.getKey()), e);
       }
+
+      this.scheduler = new LatencyTargetQueueScheduler(queues, targetLatencies, config.getLatencyWindow());
+
+      // Waiting for a queue to become available must not by itself put the shortest target out of reach
+      for (Duration targetLatency : targetLatencies) {
+        if (targetLatency.compareTo(noQueueAvailableWait) < 0) {
+          this.noQueueAvailableWait = targetLatency;
+        }
+      }
+
+      requestAttribute(MessageSystemAttributeName.SENT_TIMESTAMP.toString());
+      requestAttribute(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP.toString());
+    }
+
+    // Initialize per-queue lag tracking, which needs the sent and first receive timestamps of every message and
+    // the receive count to tell first deliveries from redeliveries
+    if (config.isLagTracking()) {
+      this.lagTracker = new LagTracker(queues);
+      requestAttribute(MessageSystemAttributeName.SENT_TIMESTAMP.toString());
+      requestAttribute(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP.toString());
+      requestAttribute(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT.toString());
+
+      if (config.getLagExporter() != null) {
+        // Exporters may block, so they run off the timer thread; ticks that arrive while an export is still running
+        // are skipped
+        this.lagExport = Flux.interval(config.getLagExportInterval())
+                .onBackpressureDrop()
+                .publishOn(Schedulers.boundedElastic(), 1)
+                .subscribe(tick -> exportLagSnapshots());
+      }
+    }
+
+    // Initialize the dead-letter queue used for diverting poison messages
+    if (config.getDeadLetterQueueName() != null) {
+      this.deadLetterQueueUrl = queueUrls.get(config.getDeadLetterQueueName());
+      requestAttribute(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT.toString());
+    }
+
+    // Additional message system attributes requested by the user
+    config.getAttributeNames().forEach(this::requestAttribute);
+
+    // Message attributes must be received in order to preserve them when messages are moved between queues
+    if (config.getDeadLetterQueueName() != null || config.getRetryPolicy() != null) {
+      this.messageAttributeNames.add("All");
+    }
+  }
+
+  /**
+   * Gets the duration for which a queue is paused after too many empty receives. Queues with a target latency are
+   * paused for no longer than their target, so that messages arriving at an idle queue can still be received in
+   * time and the scheduler can react to them.
+   *
+   * @param queue queue to pause
+   * @return pause duration
+   */
+  private Duration emptyReceiveTimeout(final PriorityQueueInfo queue) {
+    final Duration targetLatency = config.getLatencyTargets().get(queue.getQueueName());
+    if (targetLatency != null && targetLatency.compareTo(config.getEmptyReceiveTimeout()) < 0) {
+      return targetLatency;
+    }
+
+    return config.getEmptyReceiveTimeout();
+  }
+
+  /**
+   * Exports a snapshot of the lag of every queue to the configured exporter.
+   */
+  private void exportLagSnapshots() {
+    try {
+      config.getLagExporter().accept(getLagSnapshots());
+    } catch (Exception e) {
+      // A failing exporter must not stop future exports
+      LOG.warn("Unable to export lag snapshots", e);
+    }
+  }
+
+  /**
+   * Creates the circuit breaker for a queue when adaptive concurrency is enabled.
+   *
+   * @return a {@link CircuitBreaker} or <code>null</code> if adaptive concurrency is disabled
+   */
+  private CircuitBreaker newCircuitBreaker() {
+    if (concurrencyLimiter == null) {
+      return null;
+    }
+
+    return new CircuitBreaker(config.getCircuitBreakerFailureThreshold(), config.getCircuitBreakerOpenDuration());
+  }
+
+  /**
+   * Adds a message system attribute to the attributes requested on every receive.
+   *
+   * @param attributeName attribute name
+   */
+  private void requestAttribute(final String attributeName) {
+    if (!attributeNames.contains(attributeName)) {
+      attributeNames.add(attributeName);
+    }
+  }
+
+  /**
+   * A stream of message batches received by concurrent pollers.
+   */
+  private class ConcurrentPoll {
+    private final FluxSink<List<Message>> fluxSink;
+    private final long count;
+    private final AtomicInteger pollers = new AtomicInteger();
+    private final AtomicLong unreserved;
+    private final AtomicLong emitted = new AtomicLong();
+    private volatile boolean stopped;
+
+    private ConcurrentPoll(final FluxSink<List<Message>> fluxSink, final long count) {
+      this.fluxSink = fluxSink;
+      this.count = count;
+      this.unreserved = new AtomicLong(count);
+    }
+
+    /**
+     * Starts polling and keeps starting pollers whenever subscribers request more batches.
+     */
+    private void start() {
+      concurrentPolls.add(this);
+      fluxSink.onDispose(() -> {
+        stopped = true;
+        concurrentPolls.remove(this);
+      });
+      fluxSink.onRequest(n -> startPollers());
+      startPollers();
+    }
+
+    /**
+     * Starts pollers until the concurrency limit or the requested number of batches is reached.
+     */
+    private void startPollers() {
+      while (true) {
+        final int running = pollers.get();
+        if (stopped
+                || running >= concurrencyLimiter.getLimit()
+                || running >= fluxSink.requestedFromDownstream()
+                || unreserved.get() == 0) {
+          return;
+        }
+
+        if (pollers.compareAndSet(running, running + 1)) {
+          try {
+            pollScheduler.schedule(this::poll);
+          } catch (RejectedExecutionException e) {
+            // The client has been closed
+            pollers.decrementAndGet();
+            stop(e);
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Performs a single receive and then starts the pollers needed to continue.
+     */
+    private void poll() {
+      try {
+        if (stopped) {
+          return;
+        }
+
+        final int reserved = reserve(unreserved, config.getMaxNumberOfMessages());
+        if (reserved == 0) {
+          // The remaining messages are being received by other pollers
+          return;
+        }
+
+        final List<Message> messages = receive(nextQueue(), reserved);
+        unreserved.addAndGet(reserved - messages.size());
+
+        if (!messages.isEmpty()) {
+          fluxSink.next(messages);
+
+          if (emitted.addAndGet(messages.size()) >= count) {
+            complete();
+          }
+        }
+      } catch (Exception e) {
+        // Pollers interrupted after the stream was completed by closing the client have nothing left to signal
+        if (!stopped) {
+          stop(e);
+        }
+      } finally {
+        pollers.decrementAndGet();
+      }
+
+      startPollers();
+    }
+
+    /**
+     * Completes the stream.
+     */
+    private void complete() {
+      stopped = true;
+      fluxSink.complete();
+    }
+
+    /**
+     * Fails the stream.
+     *
+     * @param e cause of the failure
+     */
+    private void stop(final Throwable e) {
+      stopped = true;
+      fluxSink.error(e);
     }
   }
 }
@@ -15,9 +15,18 @@
  */
 package com.github.gregwhitaker.sqs;
 
+import com.github.gregwhitaker.sqs.internal.QueueUrlResolver;
+import reactor.core.publisher.Mono;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Configures and builds an instance of {@link SqsPriorityClient}.
@@ -64,6 +73,153 @@ public class SqsPriorityClientBuilder {
     return this;
   }
 
+  /**
+   * Diverts messages that have been received more than the specified number of times to a dead-letter queue
+   * before they are emitted to subscribers. Messages are moved using batched sends and deletes. Disabled by default.
+   *
+   * @param queueName name of the dead-letter queue
+   * @param maxReceiveCount number of receives permitted before a message is diverted
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withDeadLetterQueue(String queueName, int maxReceiveCount) {
+    config.setDeadLetterQueueName(queueName);
+    config.setMaxReceiveCount(maxReceiveCount);
+    return this;
+  }
+
+  /**
+   * Sets the policy used to retry messages that are negatively acknowledged. When no policy is configured
+   * negatively acknowledged messages are immediately made visible again on the queue they were received from.
+   *
+   * @param retryPolicy retry policy
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+    config.setRetryPolicy(retryPolicy);
+    return this;
+  }
+
+  /**
+   * Sets the duration of the sliding window over which message wait times are measured for queues configured
+   * with target latencies. Default is 1 minute.
+   *
+   * @param latencyWindow latency window
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withLatencyWindow(Duration latencyWindow) {
+    config.setLatencyWindow(latencyWindow);
+    return this;
+  }
+
+  /**
+   * Limits the payload bytes of messages that have been received but not yet deleted or nacked. Receiving pauses
+   * while the limit is exceeded and resumes as messages are acknowledged. Since message sizes are only known once
+   * they have been received, the limit can be exceeded by up to one receive per poller, which is one receive unless
+   * adaptive concurrency is enabled. Default is 0 (unlimited).
+   *
+   * @param maxInFlightBytes maximum number of in-flight payload bytes
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withMaxInFlightBytes(long maxInFlightBytes) {
+    config.setMaxInFlightBytes(maxInFlightBytes);
+    return this;
+  }
+
+  /**
+   * Tracks per-queue lag: the time messages spend in their queue before they are first received and the time
+   * between receiving and deleting them. Snapshots are available from {@link SqsPriorityClient#getLagSnapshots()}.
+   * Disabled by default.
+   *
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withLagTracking() {
+    config.setLagTracking(true);
+    return this;
+  }
+
+  /**
+   * Tracks per-queue lag and periodically exports snapshots keyed by queue name, in priority order from lowest
+   * to highest. Exports run on a Reactor bounded elastic thread, so the exporter may block; an export that is still
+   * running when the next one is due causes that export to be skipped. Exports stop when the client is closed.
+   *
+   * @param exportInterval interval at which snapshots are exported
+   * @param exporter consumer that snapshots are exported to
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withLagTracking(Duration exportInterval, Consumer<Map<String, LagSnapshot>> exporter) {
+    config.setLagTracking(true);
+    config.setLagExportInterval(exportInterval);
+    config.setLagExporter(exporter);
+    return this;
+  }
+
+  /**
+   * Polls with an internally managed number of concurrent pollers that adapts between the specified bounds.
+   * Concurrency grows while receives return full batches with stable latency and shrinks when SQS throttles
+   * receives or their latency spikes. Throttled queues are skipped by a per-queue circuit breaker. Pollers run on
+   * up to <code>maxConcurrency</code> threads owned by the client, which are released by
+   * {@link SqsPriorityClient#close()}. Disabled by default, in which case polling runs on the subscribing thread.
+   *
+   * @param minConcurrency minimum number of concurrent pollers
+   * @param maxConcurrency maximum number of concurrent pollers
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withAdaptiveConcurrency(int minConcurrency, int maxConcurrency) {
+    config.setMinConcurrency(minConcurrency);
+    config.setMaxConcurrency(maxConcurrency);
+    return this;
+  }
+
+  /**
+   * Configures the per-queue circuit breaker used with adaptive concurrency. Default is to open after 5
+   * consecutive throttled or failed receives and to probe again after 30 seconds.
+   *
+   * @param failureThreshold number of consecutive throttled or failed receives that opens the breaker
+   * @param openDuration time the breaker stays open before a probe receive is allowed
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withCircuitBreaker(int failureThreshold, Duration openDuration) {
+    config.setCircuitBreakerFailureThreshold(failureThreshold);
+    config.setCircuitBreakerOpenDuration(openDuration);
+    return this;
+  }
+
+  /**
+   * Requests additional message system attributes, such as <code>SentTimestamp</code>, on every receive.
+   *
+   * @param attributeNames names of the message system attributes to request
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withAttributeNames(String... attributeNames) {
+    config.getAttributeNames().addAll(Arrays.asList(attributeNames));
+    return this;
+  }
+
+  /**
+   * Supplies the url of a queue so that it does not need to be looked up when the client is built.
+   *
+   * @param queueName name of the queue
+   * @param queueUrl url of the queue
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withQueueUrl(String queueName, String queueUrl) {
+    config.getQueueUrls().put(queueName, queueUrl);
+    return this;
+  }
+
+  /**
+   * Caches queue urls in a local file so that subsequent starts do not need to look them up. Queue urls
+   * do not change for the lifetime of a queue, so the file only needs to be deleted if a queue is recreated
+   * in a different account or region.
+   *
+   * @param cacheFile file in which to cache queue urls
+   * @return this {@link SqsPriorityClientBuilder}
+   */
+  public SqsPriorityClientBuilder withQueueUrlCache(Path cacheFile) {
+    config.setQueueUrlCacheFile(cacheFile);
+    return this;
+  }
+
   /**
    * Adds priority queues from which to read messages.
    *
@@ -74,13 +230,44 @@ public class SqsPriorityClientBuilder {
   }
 
   /**
-   * Creates an instance of {@link SqsPriorityClient}.
+   * Creates an instance of {@link SqsPriorityClient}, waiting for any queue urls that need to be looked up. Safe
+   * to call from any thread, including non-blocking Reactor threads.
    *
    * @return an {@link SqsPriorityClient}
    */
   public SqsPriorityClient build() {
-    validate();
-    return new SqsPriorityClient(config);
+    try {
+      return buildAsync().toFuture().join();
+    } catch (CompletionException e) {
+      // Rethrow the original exception so that callers see the same exceptions as with buildAsync()
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw e;
+    }
+  }
+
+  /**
+   * Creates an instance of {@link SqsPriorityClient} without blocking. Queue urls that have not been supplied
+   * or cached are looked up concurrently.
+   *
+   * @return a {@link Mono} of {@link SqsPriorityClient}
+   */
+  public Mono<SqsPriorityClient> buildAsync() {
+    return Mono.defer(() -> {
+      validate();
+
+      final List<String> queueNames = new ArrayList<>(config.getWeightedQueues().keySet());
+      queueNames.addAll(config.getLatencyTargets().keySet());
+      if (config.getDeadLetterQueueName() != null) {
+        queueNames.add(config.getDeadLetterQueueName());
+      }
+
+      return new QueueUrlResolver(config.getSqsClient(), config.getQueueUrls(), config.getQueueUrlCacheFile())
+              .resolve(queueNames)
+              .map(queueUrls -> new SqsPriorityClient(config, queueUrls));
+    });
   }
 
   /**
@@ -98,5 +285,44 @@ public class SqsPriorityClientBuilder {
     if (config.getEmptyReceiveTimeout() == null) {
       throw new IllegalArgumentException("Empty receive count cannot be null");
     }
+
+    if (config.getMaxConcurrency() > 0) {
+      if (config.getMinConcurrency() <= 0 || config.getMinConcurrency() > config.getMaxConcurrency()) {
+        throw new IllegalArgumentException("Min concurrency must be a positive integer no greater than max concurrency");
+      }
+
+      if (config.getCircuitBreakerFailureThreshold() <= 0) {
+        throw new IllegalArgumentException("Circuit breaker failure threshold must be a positive integer");
+      }
+
+      if (config.getCircuitBreakerOpenDuration() == null || config.getCircuitBreakerOpenDuration().isNegative()) {
+        throw new IllegalArgumentException("Circuit breaker open duration cannot be null or negative");
+      }
+    }
+
+    if (config.getLagExporter() != null) {
+      if (config.getLagExportInterval() == null || config.getLagExportInterval().isZero() || config.getLagExportInterval().isNegative()) {
+        throw new IllegalArgumentException("Lag export interval must be a positive duration");
+      }
+    }
+
+    if (config.getMaxInFlightBytes() < 0) {
+      throw new IllegalArgumentException("Max in-flight bytes cannot be negative");
+    }
+
+    if (config.getLatencyWindow() == null || config.getLatencyWindow().isZero() || config.getLatencyWindow().isNegative()) {
+      throw new IllegalArgumentException("Latency window must be positive");
+    }
+
+    if (config.getDeadLetterQueueName() != null) {
+      if (config.getMaxReceiveCount() <= 0) {
+        throw new IllegalArgumentException("Max receive count for dead-letter queue must be a positive integer");
+      }
+
+      if (config.getWeightedQueues().containsKey(config.getDeadLetterQueueName())
+              || config.getLatencyTargets().containsKey(config.getDeadLetterQueueName())) {
+        throw new IllegalArgumentException("Dead-letter queue cannot be one of the priority queues");
+      }
+    }
   }
 }
@@ -17,8 +17,14 @@ package com.github.gregwhitaker.sqs;
 
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * SqsPriorityClient configuration
@@ -40,11 +46,52 @@ public class SqsPriorityClientConfig {
    */
   public Duration DEFAULT_EMPTY_RECEIVE_TIMEOUT = Duration.ofSeconds(10);
 
+  /**
+   * Default maximum number of times a message can be received before it is diverted to the dead-letter queue.
+   */
+  public int DEFAULT_MAX_RECEIVE_COUNT = 5;
+
+  /**
+   * Default duration of the sliding window over which message wait times are measured for latency targets.
+   */
+  public Duration DEFAULT_LATENCY_WINDOW = Duration.ofMinutes(1);
+
+  /**
+   * Default maximum number of payload bytes of received but unacknowledged messages (0 means unlimited).
+   */
+  public long DEFAULT_MAX_IN_FLIGHT_BYTES = 0;
+
+  /**
+   * Default number of consecutive throttled or failed receives that opens the circuit breaker for a queue.
+   */
+  public int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+  /**
+   * Default duration the circuit breaker for a queue stays open before a probe receive is allowed.
+   */
+  public Duration DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+
   private SqsClient sqsClient;
   private int maxNumberOfMessages = DEFAULT_MAX_NUMBER_OF_MESSAGES;
   private int maxEmptyReceiveCount = DEFAULT_MAX_EMPTY_RECEIVE_COUNT;
   private Duration emptyReceiveTimeout = DEFAULT_EMPTY_RECEIVE_TIMEOUT;
   private LinkedHashMap<String, Double> weightedQueues;
+  private LinkedHashMap<String, Duration> latencyTargets;
+  private Duration latencyWindow = DEFAULT_LATENCY_WINDOW;
+  private String deadLetterQueueName;
+  private int maxReceiveCount = DEFAULT_MAX_RECEIVE_COUNT;
+  private RetryPolicy retryPolicy;
+  private List<String> attributeNames;
+  private Map<String, String> queueUrls;
+  private Path queueUrlCacheFile;
+  private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+  private int minConcurrency;
+  private int maxConcurrency;
+  private int circuitBreakerFailureThreshold = DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+  private Duration circuitBreakerOpenDuration = DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION;
+  private boolean lagTracking;
+  private Duration lagExportInterval;
+  private Consumer<Map<String, LagSnapshot>> lagExporter;
 
   /**
    * Gets the AWS sqs client.
@@ -139,4 +186,304 @@ public class SqsPriorityClientConfig {
   public void setWeightedQueues(LinkedHashMap<String, Double> weightedQueues) {
     this.weightedQueues = weightedQueues;
   }
+
+  /**
+   * Gets the name of the queue to which poison messages are diverted.
+   *
+   * @return dead-letter queue name or <code>null</code> if poison message diversion is disabled
+   */
+  public String getDeadLetterQueueName() {
+    return deadLetterQueueName;
+  }
+
+  /**
+   * Sets the name of the queue to which poison messages are diverted.
+   *
+   * @param deadLetterQueueName dead-letter queue name
+   */
+  public void setDeadLetterQueueName(String deadLetterQueueName) {
+    this.deadLetterQueueName = deadLetterQueueName;
+  }
+
+  /**
+   * Gets the maximum number of times a message can be received before it is diverted to the dead-letter queue.
+   *
+   * @return max receive count
+   */
+  public int getMaxReceiveCount() {
+    return maxReceiveCount;
+  }
+
+  /**
+   * Sets the maximum number of times a message can be received before it is diverted to the dead-letter queue.
+   *
+   * @param maxReceiveCount max receive count
+   */
+  public void setMaxReceiveCount(int maxReceiveCount) {
+    this.maxReceiveCount = maxReceiveCount;
+  }
+
+  /**
+   * Gets the policy applied to messages that are negatively acknowledged.
+   *
+   * @return retry policy or <code>null</code> if failed messages are released back to their queue
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Sets the policy applied to messages that are negatively acknowledged.
+   *
+   * @param retryPolicy retry policy
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Gets the additional message system attributes requested on every receive.
+   *
+   * @return a {@link List} of attribute names
+   */
+  public List<String> getAttributeNames() {
+    if (attributeNames == null) {
+      this.attributeNames = new ArrayList<>();
+    }
+
+    return attributeNames;
+  }
+
+  /**
+   * Sets the additional message system attributes requested on every receive.
+   *
+   * @param attributeNames a {@link List} of attribute names
+   */
+  public void setAttributeNames(List<String> attributeNames) {
+    this.attributeNames = attributeNames;
+  }
+
+  /**
+   * Gets the queue urls supplied directly instead of being looked up.
+   *
+   * @return a {@link Map} of queue names to urls
+   */
+  public Map<String, String> getQueueUrls() {
+    if (queueUrls == null) {
+      this.queueUrls = new HashMap<>();
+    }
+
+    return queueUrls;
+  }
+
+  /**
+   * Sets the queue urls supplied directly instead of being looked up.
+   *
+   * @param queueUrls a {@link Map} of queue names to urls
+   */
+  public void setQueueUrls(Map<String, String> queueUrls) {
+    this.queueUrls = queueUrls;
+  }
+
+  /**
+   * Gets the file in which resolved queue urls are cached between runs.
+   *
+   * @return cache file or <code>null</code> if queue urls are not cached
+   */
+  public Path getQueueUrlCacheFile() {
+    return queueUrlCacheFile;
+  }
+
+  /**
+   * Sets the file in which resolved queue urls are cached between runs.
+   *
+   * @param queueUrlCacheFile cache file
+   */
+  public void setQueueUrlCacheFile(Path queueUrlCacheFile) {
+    this.queueUrlCacheFile = queueUrlCacheFile;
+  }
+
+  /**
+   * Gets the queues configured with target latencies.
+   *
+   * @return a {@link LinkedHashMap} of queue names to target latencies
+   */
+  public LinkedHashMap<String, Duration> getLatencyTargets() {
+    if (latencyTargets == null) {
+      this.latencyTargets = new LinkedHashMap<>();
+    }
+
+    return latencyTargets;
+  }
+
+  /**
+   * Sets the queues configured with target latencies.
+   *
+   * @param latencyTargets a {@link LinkedHashMap} of queue names to target latencies
+   */
+  public void setLatencyTargets(LinkedHashMap<String, Duration> latencyTargets) {
+    this.latencyTargets = latencyTargets;
+  }
+
+  /**
+   * Gets the duration of the sliding window over which message wait times are measured.
+   *
+   * @return latency window
+   */
+  public Duration getLatencyWindow() {
+    return latencyWindow;
+  }
+
+  /**
+   * Sets the duration of the sliding window over which message wait times are measured.
+   *
+   * @param latencyWindow latency window
+   */
+  public void setLatencyWindow(Duration latencyWindow) {
+    this.latencyWindow = latencyWindow;
+  }
+
+  /**
+   * Gets the maximum number of payload bytes of received but unacknowledged messages.
+   *
+   * @return max in-flight bytes, or 0 if unlimited
+   */
+  public long getMaxInFlightBytes() {
+    return maxInFlightBytes;
+  }
+
+  /**
+   * Sets the maximum number of payload bytes of received but unacknowledged messages.
+   *
+   * @param maxInFlightBytes max in-flight bytes, or 0 if unlimited
+   */
+  public void setMaxInFlightBytes(long maxInFlightBytes) {
+    this.maxInFlightBytes = maxInFlightBytes;
+  }
+
+  /**
+   * Gets the minimum number of concurrent pollers when adaptive concurrency is enabled.
+   *
+   * @return min concurrency
+   */
+  public int getMinConcurrency() {
+    return minConcurrency;
+  }
+
+  /**
+   * Sets the minimum number of concurrent pollers when adaptive concurrency is enabled.
+   *
+   * @param minConcurrency min concurrency
+   */
+  public void setMinConcurrency(int minConcurrency) {
+    this.minConcurrency = minConcurrency;
+  }
+
+  /**
+   * Gets the maximum number of concurrent pollers when adaptive concurrency is enabled.
+   *
+   * @return max concurrency, or 0 if adaptive concurrency is disabled
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Sets the maximum number of concurrent pollers when adaptive concurrency is enabled.
+   *
+   * @param maxConcurrency max concurrency, or 0 to disable adaptive concurrency
+   */
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Gets the number of consecutive throttled or failed receives that opens the circuit breaker for a queue.
+   *
+   * @return failure threshold
+   */
+  public int getCircuitBreakerFailureThreshold() {
+    return circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * Sets the number of consecutive throttled or failed receives that opens the circuit breaker for a queue.
+   *
+   * @param circuitBreakerFailureThreshold failure threshold
+   */
+  public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+    this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * Gets the duration the circuit breaker for a queue stays open before a probe receive is allowed.
+   *
+   * @return open duration
+   */
+  public Duration getCircuitBreakerOpenDuration() {
+    return circuitBreakerOpenDuration;
+  }
+
+  /**
+   * Sets the duration the circuit breaker for a queue stays open before a probe receive is allowed.
+   *
+   * @param circuitBreakerOpenDuration open duration
+   */
+  public void setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+    this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+  }
+
+  /**
+   * Gets whether per-queue lag is tracked.
+   *
+   * @return <code>true</code> if lag tracking is enabled; otherwise <code>false</code>
+   */
+  public boolean isLagTracking() {
+    return lagTracking;
+  }
+
+  /**
+   * Sets whether per-queue lag is tracked.
+   *
+   * @param lagTracking <code>true</code> to enable lag tracking
+   */
+  public void setLagTracking(boolean lagTracking) {
+    this.lagTracking = lagTracking;
+  }
+
+  /**
+   * Gets the interval at which lag snapshots are exported.
+   *
+   * @return export interval, or <code>null</code> if snapshots are not exported
+   */
+  public Duration getLagExportInterval() {
+    return lagExportInterval;
+  }
+
+  /**
+   * Sets the interval at which lag snapshots are exported.
+   *
+   * @param lagExportInterval export interval
+   */
+  public void setLagExportInterval(Duration lagExportInterval) {
+    this.lagExportInterval = lagExportInterval;
+  }
+
+  /**
+   * Gets the consumer that lag snapshots are exported to.
+   *
+   * @return exporter, or <code>null</code> if snapshots are not exported
+   */
+  public Consumer<Map<String, LagSnapshot>> getLagExporter() {
+    return lagExporter;
+  }
+
+  /**
+   * Sets the consumer that lag snapshots are exported to.
+   *
+   * @param lagExporter exporter
+   */
+  public void setLagExporter(Consumer<Map<String, LagSnapshot>> lagExporter) {
+    this.lagExporter = lagExporter;
+  }
 }
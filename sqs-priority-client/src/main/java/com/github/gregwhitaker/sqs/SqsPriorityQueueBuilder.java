@@ -18,7 +18,9 @@ package com.github.gregwhitaker.sqs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -57,6 +59,31 @@ public class SqsPriorityQueueBuilder {
     return this;
   }
 
+  /**
+   * Adds a queue from which to receive messages that should wait no longer than the target latency. Queues
+   * configured with target latencies are polled by a scheduler that continuously adjusts the share of polls
+   * given to each queue to keep message wait times within their targets. A queue that is paused after too many
+   * empty receives is paused for no longer than its target latency. Target latencies cannot be combined with
+   * weighted queues.
+   *
+   * @param queueName name of the queue
+   * @param targetLatency maximum time messages should wait in the queue before being received
+   * @return this {@link SqsPriorityQueueBuilder}
+   */
+  public SqsPriorityQueueBuilder queue(final String queueName, final Duration targetLatency) {
+    final LinkedHashMap<String, Duration> latencyTargets = parentBuilder.config.getLatencyTargets();
+    latencyTargets.put(queueName, targetLatency);
+
+    // Sort the queues based on target latency (shortest target last, matching the ordering of weighted queues)
+    parentBuilder.config.setLatencyTargets(latencyTargets.entrySet()
+            .stream()
+            .sorted(Map.Entry.<String, Duration>comparingByValue(Comparator.nullsFirst(Comparator.naturalOrder())).reversed())
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+                    (e1, e2) -> e1, LinkedHashMap::new)));
+
+    return this;
+  }
+
   /**
    * Ends configuration of the builder and returns to the parent builder.
    *
@@ -73,6 +100,11 @@ public class SqsPriorityQueueBuilder {
   private void validate() {
     LOG.debug("Validating priority queue configuration");
 
+    if (!parentBuilder.config.getLatencyTargets().isEmpty()) {
+      validateLatencyTargets();
+      return;
+    }
+
     // Validate that queue weights equal 1
     final double summedWeights = parentBuilder.config.getWeightedQueues().values()
             .stream()
@@ -93,4 +125,19 @@ public class SqsPriorityQueueBuilder {
       throw new IllegalArgumentException("Queue weights must be unique");
     }
   }
+
+  /**
+   * Validates the configuration of queues with target latencies.
+   */
+  private void validateLatencyTargets() {
+    if (!parentBuilder.config.getWeightedQueues().isEmpty()) {
+      throw new IllegalArgumentException("Queues must be configured with either weights or target latencies, not both");
+    }
+
+    for (Duration targetLatency : parentBuilder.config.getLatencyTargets().values()) {
+      if (targetLatency == null || targetLatency.isZero() || targetLatency.isNegative()) {
+        throw new IllegalArgumentException("Queue target latencies must be positive");
+      }
+    }
+  }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Adjusts the number of concurrent pollers using additive increase and multiplicative decrease (AIMD).
+ *
+ * <p>The limit grows by roughly one poller per round of receives while receives return full batches and their
+ * latency stays close to the observed baseline. The limit is halved when SQS throttles a receive and reduced by a
+ * quarter when receive latency spikes above twice the baseline. Decreases are applied at most once per second so
+ * that a burst of failures from many pollers counts as a single congestion signal.</p>
+ */
+public class AdaptiveConcurrencyLimiter {
+  private static final double THROTTLE_BACKOFF_RATIO = 0.5;
+  private static final double LATENCY_BACKOFF_RATIO = 0.75;
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double BASELINE_SMOOTHING = 0.05;
+  private static final long DECREASE_COOLDOWN_NANOS = 1_000_000_000L;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final LongSupplier nanoClock;
+  private double limit;
+  private double baselineLatencyNanos;
+  private long lastDecreaseNanos;
+  private volatile int currentLimit;
+
+  /**
+   * Creates a new instance of {@link AdaptiveConcurrencyLimiter}.
+   *
+   * @param minLimit minimum number of concurrent pollers
+   * @param maxLimit maximum number of concurrent pollers
+   */
+  public AdaptiveConcurrencyLimiter(final int minLimit, final int maxLimit) {
+    this(minLimit, maxLimit, System::nanoTime);
+  }
+
+  AdaptiveConcurrencyLimiter(final int minLimit, final int maxLimit, final LongSupplier nanoClock) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.nanoClock = nanoClock;
+    this.limit = minLimit;
+    this.currentLimit = minLimit;
+    this.lastDecreaseNanos = nanoClock.getAsLong() - DECREASE_COOLDOWN_NANOS;
+  }
+
+  /**
+   * Records a successful receive.
+   *
+   * @param latencyNanos duration of the receive call
+   * @param fullBatch <code>true</code> if the receive returned the maximum number of messages
+   */
+  public synchronized void onSuccess(final long latencyNanos, final boolean fullBatch) {
+    if (baselineLatencyNanos == 0) {
+      baselineLatencyNanos = latencyNanos;
+    }
+
+    if (latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+      decrease(LATENCY_BACKOFF_RATIO);
+    } else if (fullBatch) {
+      setLimit(limit + 1.0 / limit);
+    }
+
+    // Track the baseline slowly so that a lasting change in latency is eventually accepted as normal
+    baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * BASELINE_SMOOTHING;
+  }
+
+  /**
+   * Records a receive that was throttled or failed with a server error.
+   */
+  public synchronized void onThrottle() {
+    decrease(THROTTLE_BACKOFF_RATIO);
+  }
+
+  /**
+   * Gets the current number of pollers allowed to run concurrently.
+   *
+   * @return concurrency limit
+   */
+  public int getLimit() {
+    return currentLimit;
+  }
+
+  /**
+   * Gets the maximum number of pollers allowed to run concurrently.
+   *
+   * @return maximum concurrency limit
+   */
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  private void decrease(final double ratio) {
+    final long now = nanoClock.getAsLong();
+    if (now - lastDecreaseNanos >= DECREASE_COOLDOWN_NANOS) {
+      lastDecreaseNanos = now;
+      setLimit(limit * ratio);
+    }
+  }
+
+  private void setLimit(final double newLimit) {
+    this.limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    this.currentLimit = (int) limit;
+  }
+}
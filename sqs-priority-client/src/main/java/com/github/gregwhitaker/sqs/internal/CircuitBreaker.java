@@ -0,0 +1,107 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker that stops a queue from being polled after repeated throttling or server errors. Once the
+ * breaker has been open for the configured duration a single probe receive is allowed; the breaker closes if
+ * the probe succeeds and opens again if it fails. Every request allowed through must be settled with
+ * {@link #onSuccess()}, {@link #onFailure()} or {@link #releaseProbe()}.
+ */
+public class CircuitBreaker {
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private final LongSupplier clock;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicBoolean probing = new AtomicBoolean();
+  private volatile long openUntil;
+
+  /**
+   * Creates a new instance of {@link CircuitBreaker}.
+   *
+   * @param failureThreshold number of consecutive failures that opens the breaker
+   * @param openDuration time the breaker stays open before a probe is allowed
+   */
+  public CircuitBreaker(final int failureThreshold, final Duration openDuration) {
+    this(failureThreshold, openDuration, System::currentTimeMillis);
+  }
+
+  CircuitBreaker(final int failureThreshold, final Duration openDuration, final LongSupplier clock) {
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openDuration.toMillis();
+    this.clock = clock;
+  }
+
+  /**
+   * Checks whether a request may be sent. While the breaker is half-open only one caller is allowed through.
+   *
+   * @return <code>true</code> if the request is allowed; otherwise <code>false</code>
+   */
+  public boolean allowRequest() {
+    if (consecutiveFailures.get() < failureThreshold) {
+      return true;
+    }
+
+    if (clock.getAsLong() < openUntil) {
+      return false;
+    }
+
+    // Half-open, let a single probe through
+    return probing.compareAndSet(false, true);
+  }
+
+  /**
+   * Records a successful request and closes the breaker.
+   */
+  public void onSuccess() {
+    consecutiveFailures.set(0);
+    probing.set(false);
+  }
+
+  /**
+   * Records a failed request and opens the breaker once the failure threshold is reached.
+   */
+  public void onFailure() {
+    if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+      openUntil = clock.getAsLong() + openMillis;
+      probing.set(false);
+    }
+  }
+
+  /**
+   * Settles a request that neither succeeded nor failed in a way that says anything about the health of the
+   * queue, freeing the probe slot if the request was the half-open probe.
+   */
+  public void releaseProbe() {
+    probing.set(false);
+  }
+
+  /**
+   * Checks whether the breaker is rejecting requests, either because it is open or because its half-open probe
+   * is still in progress.
+   *
+   * @return <code>true</code> if the breaker is open; otherwise <code>false</code>
+   */
+  public boolean isOpen() {
+    return consecutiveFailures.get() >= failureThreshold && (clock.getAsLong() < openUntil || probing.get());
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the payload bytes of messages that have been received but not yet acknowledged, and blocks receivers
+ * while the configured budget is exhausted.
+ */
+public class InFlightBudget {
+
+  private final long maxBytes;
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasCapacity = lock.newCondition();
+
+  /**
+   * Creates a new instance of {@link InFlightBudget}.
+   *
+   * @param maxBytes maximum number of in-flight payload bytes, or 0 for no limit
+   */
+  public InFlightBudget(final long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Adds the size of a received message to the in-flight bytes. Messages are always accepted, since their size
+   * is only known once they have been received. Concurrent receivers can all pass {@link #isExhausted()} at the
+   * same time, so the budget can be exceeded by up to one receive per receiver.
+   *
+   * @param bytes payload size of the message
+   */
+  public void acquire(final long bytes) {
+    usedBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Removes the size of an acknowledged message from the in-flight bytes and wakes up blocked receivers if
+   * capacity is available again.
+   *
+   * @param bytes payload size of the message
+   */
+  public void release(final long bytes) {
+    final long used = usedBytes.addAndGet(-bytes);
+    if (maxBytes > 0 && used < maxBytes && used + bytes >= maxBytes) {
+      lock.lock();
+      try {
+        hasCapacity.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Checks whether the in-flight bytes have reached the budget.
+   *
+   * @return <code>true</code> if the budget is exhausted; otherwise <code>false</code>
+   */
+  public boolean isExhausted() {
+    return maxBytes > 0 && usedBytes.get() >= maxBytes;
+  }
+
+  /**
+   * Waits until the in-flight bytes drop below the budget.
+   *
+   * @param timeout maximum time to wait
+   * @return <code>true</code> if capacity is available; <code>false</code> if the wait timed out
+   */
+  public boolean awaitCapacity(final Duration timeout) {
+    if (!isExhausted()) {
+      return true;
+    }
+
+    lock.lock();
+    try {
+      long remainingNanos = timeout.toNanos();
+      while (isExhausted()) {
+        if (remainingNanos <= 0) {
+          return false;
+        }
+
+        remainingNanos = hasCapacity.awaitNanos(remainingNanos);
+      }
+
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the payload bytes of messages that are currently in flight.
+   *
+   * @return in-flight bytes
+   */
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import com.google.common.base.Utf8;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import java.util.Map;
+
+/**
+ * Stores information about a message that has been received but not yet acknowledged.
+ */
+public class InFlightMessage {
+
+  private final String messageId;
+  private final int queueIndex;
+  private final long size;
+  private final long receivedAtNanos = System.nanoTime();
+
+  /**
+   * Creates a new instance of {@link InFlightMessage}.
+   *
+   * @param messageId id of the message
+   * @param queueIndex index of the queue the message was received from
+   * @param size payload size of the message in bytes
+   */
+  public InFlightMessage(final String messageId, final int queueIndex, final long size) {
+    this.messageId = messageId;
+    this.queueIndex = queueIndex;
+    this.size = size;
+  }
+
+  /**
+   * Calculates the payload size of a message the same way SQS does, as the sum of the body and the names,
+   * types and values of the message attributes.
+   *
+   * @param message message
+   * @return payload size in bytes
+   */
+  public static long sizeOf(final Message message) {
+    long size = message.body() != null ? Utf8.encodedLength(message.body()) : 0;
+
+    for (Map.Entry<String, MessageAttributeValue> entry : message.messageAttributes().entrySet()) {
+      final MessageAttributeValue value = entry.getValue();
+      size += Utf8.encodedLength(entry.getKey());
+      size += value.dataType() != null ? Utf8.encodedLength(value.dataType()) : 0;
+      size += value.stringValue() != null ? Utf8.encodedLength(value.stringValue()) : 0;
+      size += value.binaryValue() != null ? value.binaryValue().asByteBuffer().remaining() : 0;
+    }
+
+    return size;
+  }
+
+  /**
+   * Gets the id of the message.
+   *
+   * @return message id
+   */
+  public String getMessageId() {
+    return messageId;
+  }
+
+  /**
+   * Gets the index of the queue the message was received from.
+   *
+   * @return queue index
+   */
+  public int getQueueIndex() {
+    return queueIndex;
+  }
+
+  /**
+   * Gets the payload size of the message.
+   *
+   * @return size in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the {@link System#nanoTime()} at which the message was received.
+   *
+   * @return receive time in nanoseconds
+   */
+  public long getReceivedAtNanos() {
+    return receivedAtNanos;
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of millisecond durations with a fixed memory footprint.
+ *
+ * <p>Values are counted in log-linear buckets in the style of HdrHistogram: every power of two is split into 32
+ * linear sub-buckets, which bounds the error of a reported value to about 3%. Values below 32ms are counted exactly
+ * and values above roughly two years are clamped into the last bucket. Recording a value takes three atomic updates
+ * without locking: the bucket count, the sum and, when the value is a new maximum, a compare-and-set of the shared
+ * maximum. The histogram can therefore be shared by all pollers and acknowledging threads, although concurrent
+ * recorders contend on the maximum while it is rising.</p>
+ */
+public class LagHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 35;
+  private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a duration.
+   *
+   * @param millis duration in milliseconds, out of range values are clamped
+   */
+  public void record(final long millis) {
+    final long value = Math.min(Math.max(0, millis), MAX_VALUE);
+    counts.incrementAndGet(indexOf(value));
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Gets a copy of the bucket counts. Values recorded while the copy is taken may or may not be included.
+   *
+   * @return bucket counts
+   */
+  public long[] getCounts() {
+    final long[] copy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy[i] = counts.get(i);
+    }
+
+    return copy;
+  }
+
+  /**
+   * Gets the sum of all recorded durations.
+   *
+   * @return sum in milliseconds
+   */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * Gets the largest recorded duration.
+   *
+   * @return max in milliseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the index of the bucket that counts a value.
+   *
+   * @param value value in milliseconds
+   * @return bucket index
+   */
+  static int indexOf(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    if (value > MAX_VALUE) {
+      return BUCKET_COUNT - 1;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * Gets the largest value counted by a bucket.
+   *
+   * @param index bucket index
+   * @return value in milliseconds
+   */
+  public static long highestValueAt(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+
+    final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    final long subBucket = index % SUB_BUCKET_COUNT;
+    final long lowestValue = (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowestValue + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
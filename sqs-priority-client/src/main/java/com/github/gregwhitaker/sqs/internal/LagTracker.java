@@ -0,0 +1,103 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks how stale each priority queue is by recording, per queue, the time messages spent in the queue before
+ * they were first received and the time between receiving and deleting them.
+ */
+public class LagTracker {
+
+  private final LagHistogram[] timeInQueue;
+  private final LagHistogram[] processingTime;
+
+  /**
+   * Creates a new instance of {@link LagTracker}.
+   *
+   * @param queues queues ordered from lowest to highest priority
+   */
+  public LagTracker(final List<PriorityQueueInfo> queues) {
+    this.timeInQueue = new LagHistogram[queues.size()];
+    this.processingTime = new LagHistogram[queues.size()];
+
+    for (int i = 0; i < queues.size(); i++) {
+      timeInQueue[i] = new LagHistogram();
+      processingTime[i] = new LagHistogram();
+    }
+  }
+
+  /**
+   * Records the time a received message spent in its queue. Both timestamps are taken by SQS, so the result is not
+   * affected by clock skew between SQS and this host. Only first deliveries are recorded, because a redelivered
+   * message reports the same first receive timestamp and would be counted again. Messages without the timestamps
+   * or the receive count are ignored.
+   *
+   * @param queue queue the message was received from
+   * @param message received message
+   */
+  public void onReceive(final PriorityQueueInfo queue, final Message message) {
+    if (!"1".equals(message.attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT))) {
+      return;
+    }
+
+    final String sentTimestamp = message.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+    final String firstReceiveTimestamp = message.attributes().get(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP);
+
+    if (sentTimestamp != null && firstReceiveTimestamp != null) {
+      try {
+        timeInQueue[queue.getIndex()].record(Long.parseLong(firstReceiveTimestamp) - Long.parseLong(sentTimestamp));
+      } catch (NumberFormatException e) {
+        // Malformed timestamps are not recorded
+      }
+    }
+  }
+
+  /**
+   * Records the time between receiving and deleting a message.
+   *
+   * @param inFlightMessage deleted message
+   */
+  public void onDelete(final InFlightMessage inFlightMessage) {
+    final long elapsedNanos = System.nanoTime() - inFlightMessage.getReceivedAtNanos();
+    processingTime[inFlightMessage.getQueueIndex()].record(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  /**
+   * Gets the histogram of the time messages spent in a queue before they were first received.
+   *
+   * @param queue queue
+   * @return a {@link LagHistogram}
+   */
+  public LagHistogram getTimeInQueue(final PriorityQueueInfo queue) {
+    return timeInQueue[queue.getIndex()];
+  }
+
+  /**
+   * Gets the histogram of the time between receiving and deleting messages from a queue.
+   *
+   * @param queue queue
+   * @return a {@link LagHistogram}
+   */
+  public LagHistogram getProcessingTime(final PriorityQueueInfo queue) {
+    return processingTime[queue.getIndex()];
+  }
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Scheduler that continuously adjusts the share of polls given to each queue so that the time messages spend
+ * waiting in each queue stays within that queue's target latency.
+ *
+ * <p>The time a message waited is measured from its <code>SentTimestamp</code> to its
+ * <code>ApproximateFirstReceiveTimestamp</code>, and the 90th percentile wait over a sliding window is compared
+ * with the queue's target. Queues that are further behind their target receive a larger share of polls. When not
+ * every target can be met, polls are shared in proportion to how far each queue is behind its target.</p>
+ *
+ * <p>The window is divided into time slices that each keep a bounded random sample of wait times, so the window
+ * covers its configured duration regardless of the receive rate. Empty receives are not wait times; they only mark
+ * a queue as drained, which caps its pressure at its target until it receives messages again.</p>
+ */
+public class LatencyTargetQueueScheduler implements QueueScheduler {
+  private static final int WINDOW_SLICES = 12;
+  private static final int SLICE_CAPACITY = 128;
+  private static final double PERCENTILE = 0.90;
+  private static final double MIN_SHARE = 0.02;
+  private static final double SMOOTHING = 0.25;
+  private static final long RECOMPUTE_INTERVAL_MILLIS = 250;
+
+  private final List<PriorityQueueInfo> queues;
+  private final long[] targetMillis;
+  private final AgeWindow[] windows;
+  private final LongSupplier clock;
+  private final double[] initialShares;
+  private volatile double[] shares;
+  private volatile long nextRecomputeMillis;
+
+  /**
+   * Creates a new instance of {@link LatencyTargetQueueScheduler}.
+   *
+   * @param queues queues ordered from lowest to highest priority
+   * @param targetLatencies target latency of each queue, in the same order as the queues
+   * @param window duration of the sliding window over which message wait times are measured
+   */
+  public LatencyTargetQueueScheduler(final List<PriorityQueueInfo> queues,
+                                     final List<Duration> targetLatencies,
+                                     final Duration window) {
+    this(queues, targetLatencies, window, System::currentTimeMillis);
+  }
+
+  LatencyTargetQueueScheduler(final List<PriorityQueueInfo> queues,
+                              final List<Duration> targetLatencies,
+                              final Duration window,
+                              final LongSupplier clock) {
+    this.queues = queues;
+    this.clock = clock;
+    this.targetMillis = new long[queues.size()];
+    this.windows = new AgeWindow[queues.size()];
+
+    for (int i = 0; i < queues.size(); i++) {
+      this.targetMillis[i] = Math.max(1, targetLatencies.get(i).toMillis());
+      this.windows[i] = new AgeWindow(window.toMillis());
+    }
+
+    this.initialShares = initialShares(targetLatencies);
+    this.shares = initialShares;
+  }
+
+  /**
+   * Calculates the share of polls given to each queue before any wait times have been measured. Shares are
+   * inversely proportional to the target latency of each queue.
+   *
+   * @param targetLatencies target latency of each queue
+   * @return initial share of each queue
+   */
+  public static double[] initialShares(final List<Duration> targetLatencies) {
+    final double[] initial = new double[targetLatencies.size()];
+    for (int i = 0; i < initial.length; i++) {
+      initial[i] = 1.0 / Math.max(1, targetLatencies.get(i).toMillis());
+    }
+
+    return normalize(initial);
+  }
+
+  @Override
+  public PriorityQueueInfo select() {
+    final long now = clock.getAsLong();
+    if (now >= nextRecomputeMillis) {
+      recompute(now);
+    }
+
+    final double[] current = shares;
+    final double nextRand = ThreadLocalRandom.current().nextDouble();
+
+    double cumulative = 0.0;
+    for (int i = 0; i < current.length; i++) {
+      cumulative += current[i];
+      if (nextRand < cumulative) {
+        return queues.get(i);
+      }
+    }
+
+    // Guards against rounding errors in the cumulative share
+    return queues.get(queues.size() - 1);
+  }
+
+  @Override
+  public void onReceive(final PriorityQueueInfo queue, final List<Message> messages) {
+    final long now = clock.getAsLong();
+    final AgeWindow window = windows[queue.getIndex()];
+
+    if (messages.isEmpty()) {
+      // An empty queue has no backlog, but the wait times of the messages it did receive remain valid samples
+      window.drained();
+      return;
+    }
+
+    window.received();
+    for (Message message : messages) {
+      final String sentTimestamp = message.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+      if (sentTimestamp == null) {
+        continue;
+      }
+
+      // Redelivered messages report their first receive so that processing failures are not counted as queue lag
+      final String firstReceiveTimestamp = message.attributes().get(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP);
+      final long receivedAt = firstReceiveTimestamp != null ? Math.min(now, Long.parseLong(firstReceiveTimestamp)) : now;
+
+      window.add(now, Math.max(0, receivedAt - Long.parseLong(sentTimestamp)));
+    }
+  }
+
+  /**
+   * Gets the current share of polls given to each queue.
+   *
+   * @return share of each queue, ordered from lowest to highest priority
+   */
+  public double[] getShares() {
+    return Arrays.copyOf(shares, shares.length);
+  }
+
+  /**
+   * Recalculates the share of polls given to each queue from the wait times measured in the current window.
+   *
+   * @param now current time in milliseconds
+   */
+  private synchronized void recompute(final long now) {
+    if (now < nextRecomputeMillis) {
+      return;
+    }
+
+    final double[] pressure = new double[windows.length];
+    double totalPressure = 0.0;
+    for (int i = 0; i < windows.length; i++) {
+      pressure[i] = windows[i].percentile(PERCENTILE, now) / (double) targetMillis[i];
+
+      // A drained queue has nobody waiting, so its past wait times should not claim more than a fair share of polls
+      if (windows[i].isDrained()) {
+        pressure[i] = Math.min(1.0, pressure[i]);
+      }
+
+      totalPressure += pressure[i];
+    }
+
+    final double[] desired = totalPressure > 0.0 ? normalize(pressure) : Arrays.copyOf(initialShares, initialShares.length);
+
+    // Every queue keeps a minimum share so that a growing backlog is noticed
+    for (int i = 0; i < desired.length; i++) {
+      desired[i] = Math.max(MIN_SHARE, desired[i]);
+    }
+
+    final double[] current = shares;
+    final double[] next = new double[current.length];
+    final double[] normalizedDesired = normalize(desired);
+    for (int i = 0; i < next.length; i++) {
+      next[i] = (1.0 - SMOOTHING) * current[i] + SMOOTHING * normalizedDesired[i];
+    }
+
+    this.shares = normalize(next);
+    this.nextRecomputeMillis = now + RECOMPUTE_INTERVAL_MILLIS;
+  }
+
+  private static double[] normalize(final double[] values) {
+    final double total = Arrays.stream(values).sum();
+    final double[] normalized = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      normalized[i] = total > 0.0 ? values[i] / total : 1.0 / values.length;
+    }
+
+    return normalized;
+  }
+
+  /**
+   * Sliding window of message wait times made up of fixed-length time slices. Each slice keeps a uniform random
+   * sample of the wait times recorded during it, and each sample is weighted by the number of wait times it
+   * represents when percentiles are calculated.
+   */
+  private static class AgeWindow {
+    private final long sliceMillis;
+    private final long[] sliceIds = new long[WINDOW_SLICES];
+    private final long[] sliceCounts = new long[WINDOW_SLICES];
+    private final long[][] sliceAges = new long[WINDOW_SLICES][SLICE_CAPACITY];
+    private boolean drained;
+
+    private AgeWindow(final long windowMillis) {
+      this.sliceMillis = Math.max(1, windowMillis / WINDOW_SLICES);
+      Arrays.fill(sliceIds, -1);
+    }
+
+    private synchronized void add(final long timestamp, final long age) {
+      final long sliceId = timestamp / sliceMillis;
+      final int idx = (int) (sliceId % WINDOW_SLICES);
+
+      if (sliceIds[idx] != sliceId) {
+        sliceIds[idx] = sliceId;
+        sliceCounts[idx] = 0;
+      }
+
+      final long count = sliceCounts[idx]++;
+      if (count < SLICE_CAPACITY) {
+        sliceAges[idx][(int) count] = age;
+      } else {
+        // Reservoir sampling keeps every wait time in the slice equally likely to be sampled
+        final long replaceIdx = ThreadLocalRandom.current().nextLong(count + 1);
+        if (replaceIdx < SLICE_CAPACITY) {
+          sliceAges[idx][(int) replaceIdx] = age;
+        }
+      }
+    }
+
+    private synchronized void received() {
+      drained = false;
+    }
+
+    private synchronized void drained() {
+      drained = true;
+    }
+
+    private synchronized boolean isDrained() {
+      return drained;
+    }
+
+    private synchronized long percentile(final double percentile, final long now) {
+      final long oldestSliceId = now / sliceMillis - WINDOW_SLICES + 1;
+
+      final long[] ages = new long[WINDOW_SLICES * SLICE_CAPACITY];
+      final double[] weights = new double[ages.length];
+      double totalWeight = 0.0;
+      int cnt = 0;
+      for (int i = 0; i < WINDOW_SLICES; i++) {
+        if (sliceIds[i] < oldestSliceId || sliceCounts[i] == 0) {
+          continue;
+        }
+
+        // Each sample stands in for the wait times of its slice that were not sampled
+        final int stored = (int) Math.min(sliceCounts[i], SLICE_CAPACITY);
+        final double weight = sliceCounts[i] / (double) stored;
+        for (int j = 0; j < stored; j++) {
+          ages[cnt] = sliceAges[i][j];
+          weights[cnt] = weight;
+          totalWeight += weight;
+          cnt++;
+        }
+      }
+
+      if (cnt == 0) {
+        return 0;
+      }
+
+      final Integer[] order = new Integer[cnt];
+      for (int i = 0; i < cnt; i++) {
+        order[i] = i;
+      }
+
+      Arrays.sort(order, Comparator.comparingLong(i -> ages[i]));
+
+      double cumulative = 0.0;
+      for (Integer idx : order) {
+        cumulative += weights[idx];
+        if (cumulative >= percentile * totalWeight) {
+          return ages[idx];
+        }
+      }
+
+      return ages[order[cnt - 1]];
+    }
+  }
+}
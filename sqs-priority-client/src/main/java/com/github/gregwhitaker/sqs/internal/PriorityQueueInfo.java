@@ -29,6 +29,7 @@ public class PriorityQueueInfo {
   private final double threshold;
   private final String queueUrl;
   private final LongAdder emptyReceiveCnt = new LongAdder();
+  private final CircuitBreaker circuitBreaker;
   private volatile Long timeoutExpiration;
 
   /**
@@ -45,11 +46,31 @@ public class PriorityQueueInfo {
                            final String queueUrl,
                            final double weight,
                            final double threshold) {
+    this(index, queueName, queueUrl, weight, threshold, null);
+  }
+
+  /**
+   * Creates a new instance of {@link PriorityQueueInfo}.
+   *
+   * @param index queue index ranking
+   * @param queueName queue name
+   * @param queueUrl queue url
+   * @param weight queue weight
+   * @param threshold queue priority threshold
+   * @param circuitBreaker circuit breaker guarding receives from the queue or <code>null</code> if none
+   */
+  public PriorityQueueInfo(final int index,
+                           final String queueName,
+                           final String queueUrl,
+                           final double weight,
+                           final double threshold,
+                           final CircuitBreaker circuitBreaker) {
     this.index = index;
     this.queueName = queueName;
     this.queueUrl = queueUrl;
     this.weight = weight;
     this.threshold = threshold;
+    this.circuitBreaker = circuitBreaker;
   }
 
   /**
@@ -66,7 +87,7 @@ public class PriorityQueueInfo {
    * @param duration length of timeout
    */
   public void timeout(final Duration duration) {
-    this.timeoutExpiration = System.currentTimeMillis() + Duration.ZERO.toMillis();
+    this.timeoutExpiration = System.currentTimeMillis() + duration.toMillis();
   }
 
   /**
@@ -75,17 +96,17 @@ public class PriorityQueueInfo {
    * @return <code>true</code> if the queue is available; otherwise <code>false</code>
    */
   public boolean isAvailable() {
-    if (timeoutExpiration == null) {
-      return true;
-    }
+    if (timeoutExpiration != null) {
+      if (timeoutExpiration > System.currentTimeMillis()) {
+        return false;
+      }
 
-    if (timeoutExpiration > System.currentTimeMillis()) {
-      return true;
-    } else {
       emptyReceiveCnt.reset();
       timeoutExpiration = null;
-      return false;
     }
+
+    // The probe of a half-open breaker is taken when the queue is actually polled
+    return circuitBreaker == null || !circuitBreaker.isOpen();
   }
 
   /**
@@ -133,6 +154,15 @@ public class PriorityQueueInfo {
     return queueUrl;
   }
 
+  /**
+   * Gets the circuit breaker guarding receives from the queue.
+   *
+   * @return circuit breaker or <code>null</code> if the queue has none
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
   /**
    * Gets the empty receive count of the queue.
    *
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.List;
+
+/**
+ * Decides which queue the client polls next.
+ */
+public interface QueueScheduler {
+
+  /**
+   * Selects the queue from which to poll for messages next. The selected queue may be unavailable, in which
+   * case the client backs off to the next highest priority queue.
+   *
+   * @return the {@link PriorityQueueInfo} for the selected queue
+   */
+  PriorityQueueInfo select();
+
+  /**
+   * Notifies the scheduler of the result of polling a queue.
+   *
+   * @param queue queue that was polled
+   * @param messages messages received from the queue, empty if the receive returned no messages
+   */
+  default void onReceive(final PriorityQueueInfo queue, final List<Message> messages) {
+    // Static schedulers do not need feedback
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the urls of the queues managed by the client. Urls supplied in the configuration are used as-is,
+ * urls found in the local cache file are used next, and all remaining urls are looked up concurrently and
+ * written back to the cache file.
+ */
+public class QueueUrlResolver {
+  private static final Logger LOG = LoggerFactory.getLogger(QueueUrlResolver.class);
+
+  private final SqsClient sqsClient;
+  private final Map<String, String> queueUrls;
+  private final Path cacheFile;
+
+  /**
+   * Creates a new instance of {@link QueueUrlResolver}.
+   *
+   * @param sqsClient sqs client
+   * @param queueUrls a {@link Map} of queue names to urls that are already known
+   * @param cacheFile file in which resolved queue urls are cached or <code>null</code> to disable caching
+   */
+  public QueueUrlResolver(final SqsClient sqsClient,
+                          final Map<String, String> queueUrls,
+                          final Path cacheFile) {
+    this.sqsClient = sqsClient;
+    this.queueUrls = queueUrls;
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Resolves the urls of the specified queues.
+   *
+   * @param queueNames names of the queues to resolve
+   * @return a {@link Mono} of a {@link Map} of queue names to urls
+   */
+  public Mono<Map<String, String>> resolve(final Collection<String> queueNames) {
+    return Mono.defer(() -> {
+      final Map<String, String> resolved = new HashMap<>();
+      final Map<String, String> cached = readCache();
+
+      for (String queueName : queueNames) {
+        if (queueUrls.containsKey(queueName)) {
+          resolved.put(queueName, queueUrls.get(queueName));
+        } else if (cached.containsKey(queueName)) {
+          resolved.put(queueName, cached.get(queueName));
+        }
+      }
+
+      final List<String> unresolved = queueNames.stream()
+              .filter(queueName -> !resolved.containsKey(queueName))
+              .distinct()
+              .collect(Collectors.toList());
+
+      if (unresolved.isEmpty()) {
+        return Mono.just(resolved);
+      }
+
+      return Flux.fromIterable(unresolved)
+              .flatMap(queueName -> Mono.fromCallable(() -> getQueueUrl(queueName))
+                      .subscribeOn(Schedulers.boundedElastic())
+                      .map(queueUrl -> new String[] { queueName, queueUrl }))
+              .collectMap(pair -> pair[0], pair -> pair[1])
+              .map(lookedUp -> {
+                resolved.putAll(lookedUp);
+
+                cached.putAll(lookedUp);
+                writeCache(cached);
+
+                return resolved;
+              });
+    });
+  }
+
+  /**
+   * Looks up the url of a queue.
+   *
+   * @param queueName queue name
+   * @return queue url
+   */
+  private String getQueueUrl(final String queueName) {
+    try {
+      return sqsClient.getQueueUrl(GetQueueUrlRequest.builder()
+              .queueName(queueName)
+              .build()).queueUrl();
+    } catch (SqsException e) {
+      LOG.error("Unable to initialize queue [queueName: '{}']", queueName);
+      throw new RuntimeException(String.format("Unable to initialize queue [queueName: '%s']", queueName), e);
+    }
+  }
+
+  /**
+   * Reads the queue urls stored in the cache file.
+   *
+   * @return a {@link Map} of queue names to urls
+   */
+  private Map<String, String> readCache() {
+    final Map<String, String> cached = new HashMap<>();
+    if (cacheFile == null || !Files.exists(cacheFile)) {
+      return cached;
+    }
+
+    try (InputStream in = Files.newInputStream(cacheFile)) {
+      final Properties properties = new Properties();
+      properties.load(in);
+      properties.stringPropertyNames().forEach(queueName -> cached.put(queueName, properties.getProperty(queueName)));
+    } catch (IOException e) {
+      // An unreadable cache is not fatal, the urls will be looked up instead
+      LOG.warn("Unable to read queue url cache [cacheFile: '{}']", cacheFile, e);
+    }
+
+    return cached;
+  }
+
+  /**
+   * Writes queue urls to the cache file.
+   *
+   * @param queueUrls a {@link Map} of queue names to urls
+   */
+  private void writeCache(final Map<String, String> queueUrls) {
+    if (cacheFile == null) {
+      return;
+    }
+
+    final Properties properties = new Properties();
+    properties.putAll(queueUrls);
+
+    try {
+      final Path parent = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+
+      // Write to a temporary file first so that concurrent readers never see a partially written cache
+      final Path tmpFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmpFile)) {
+        properties.store(out, "sqs-priority-client queue urls");
+      }
+
+      Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Unable to write queue url cache [cacheFile: '{}']", cacheFile, e);
+    }
+  }
+}
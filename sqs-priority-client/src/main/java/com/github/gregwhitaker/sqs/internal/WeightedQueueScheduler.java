@@ -0,0 +1,52 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scheduler that selects queues randomly according to their configured weights.
+ */
+public class WeightedQueueScheduler implements QueueScheduler {
+  private static final Random RAND = new Random(System.currentTimeMillis());
+
+  private final List<PriorityQueueInfo> queues;
+
+  /**
+   * Creates a new instance of {@link WeightedQueueScheduler}.
+   *
+   * @param queues queues ordered from lowest to highest priority
+   */
+  public WeightedQueueScheduler(final List<PriorityQueueInfo> queues) {
+    this.queues = queues;
+  }
+
+  @Override
+  public PriorityQueueInfo select() {
+    final double nextRand = RAND.nextDouble();
+
+    // Select queue based on random threshold value
+    for (PriorityQueueInfo queueInfo : queues) {
+      if (nextRand >= queueInfo.getThreshold()) {
+        return queueInfo;
+      }
+    }
+
+    // In the event no queue was selected above then select the highest priority queue
+    return queues.get(queues.size() - 1);
+  }
+}
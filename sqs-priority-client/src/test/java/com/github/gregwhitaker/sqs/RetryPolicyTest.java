@@ -0,0 +1,71 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryPolicyTest {
+
+  @Test
+  public void backoffDelayShouldDoubleForEachRetry() {
+    // Given
+    final RetryPolicy retryPolicy = RetryPolicy.backoff(Duration.ofSeconds(1), Duration.ofMinutes(1), 5);
+
+    // Then
+    assertFalse(retryPolicy.isDemote());
+    assertEquals(Duration.ofSeconds(1), retryPolicy.getDelay(0));
+    assertEquals(Duration.ofSeconds(2), retryPolicy.getDelay(1));
+    assertEquals(Duration.ofSeconds(8), retryPolicy.getDelay(3));
+  }
+
+  @Test
+  public void backoffDelayShouldNotExceedMaxDelay() {
+    // Given
+    final RetryPolicy retryPolicy = RetryPolicy.backoff(Duration.ofSeconds(1), Duration.ofSeconds(30), 100);
+
+    // Then
+    assertEquals(Duration.ofSeconds(30), retryPolicy.getDelay(10));
+    assertEquals(Duration.ofSeconds(30), retryPolicy.getDelay(99));
+  }
+
+  @Test
+  public void demoteDelayShouldBeFixed() {
+    // Given
+    final RetryPolicy retryPolicy = RetryPolicy.demote(Duration.ofSeconds(5), 3);
+
+    // Then
+    assertTrue(retryPolicy.isDemote());
+    assertEquals(Duration.ofSeconds(5), retryPolicy.getDelay(0));
+    assertEquals(Duration.ofSeconds(5), retryPolicy.getDelay(2));
+  }
+
+  @Test
+  public void shouldRejectDelaysLongerThanSqsAllows() {
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.backoff(Duration.ofSeconds(1), Duration.ofMinutes(16), 3));
+  }
+
+  @Test
+  public void shouldRejectNonPositiveMaxRetries() {
+    assertThrows(IllegalArgumentException.class, () -> RetryPolicy.demote(Duration.ZERO, 0));
+  }
+}
@@ -20,6 +20,8 @@ import org.junit.jupiter.api.Test;
 import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SqsPriorityClientConfigTest {
@@ -59,4 +61,82 @@ public class SqsPriorityClientConfigTest {
     // Then
     assertTrue(config.getWeightedQueues().isEmpty());
   }
+
+  @Test
+  public void shouldDefaultDeadLetterQueueToDisabled() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertNull(config.getDeadLetterQueueName());
+    assertEquals(5, config.getMaxReceiveCount());
+  }
+
+  @Test
+  public void shouldDefaultRetryPolicyToNull() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertNull(config.getRetryPolicy());
+  }
+
+  @Test
+  public void shouldDefaultAttributeNamesToEmptyIfNoneSpecified() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertTrue(config.getAttributeNames().isEmpty());
+  }
+
+  @Test
+  public void shouldDefaultQueueUrlsToEmptyIfNoneSpecified() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertTrue(config.getQueueUrls().isEmpty());
+    assertNull(config.getQueueUrlCacheFile());
+  }
+
+  @Test
+  public void defaultLatencyWindowShouldBe1Minute() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertEquals(Duration.ofMinutes(1), config.getLatencyWindow());
+    assertTrue(config.getLatencyTargets().isEmpty());
+  }
+
+  @Test
+  public void defaultMaxInFlightBytesShouldBeUnlimited() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertEquals(0, config.getMaxInFlightBytes());
+  }
+
+  @Test
+  public void adaptiveConcurrencyShouldBeDisabledByDefault() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertEquals(0, config.getMaxConcurrency());
+    assertEquals(5, config.getCircuitBreakerFailureThreshold());
+    assertEquals(Duration.ofSeconds(30), config.getCircuitBreakerOpenDuration());
+  }
+
+  @Test
+  public void lagTrackingShouldBeDisabledByDefault() {
+    // Given
+    final SqsPriorityClientConfig config = new SqsPriorityClientConfig();
+
+    // Then
+    assertFalse(config.isLagTracking());
+    assertNull(config.getLagExporter());
+  }
 }
@@ -0,0 +1,870 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs;
+
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SqsPriorityClientTest {
+  private static final String QUEUE_URL = "http://localhost:4566/000000000000/high-priority-queue";
+  private static final String LOW_PRIORITY_QUEUE_URL = "http://localhost:4566/000000000000/low-priority-queue";
+  private static final String DEAD_LETTER_QUEUE_URL = "http://localhost:4566/000000000000/dead-letter-queue";
+
+  @Test
+  public void buildShouldResolveQueueUrlsOnNonBlockingThread() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.getQueueUrl(any(GetQueueUrlRequest.class))).thenReturn(GetQueueUrlResponse.builder()
+            .queueUrl(QUEUE_URL)
+            .build());
+
+    final SqsPriorityClientBuilder builder = SqsPriorityClient.builder(sqsClient)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end();
+
+    // When
+    final SqsPriorityClient client = Mono.fromCallable(builder::build)
+            .subscribeOn(Schedulers.parallel())
+            .block(Duration.ofSeconds(5));
+
+    // Then
+    assertNotNull(client);
+    verify(sqsClient).getQueueUrl(any(GetQueueUrlRequest.class));
+  }
+
+  @Test
+  public void buildShouldRethrowValidationErrors() {
+    // Given
+    final SqsPriorityClientBuilder builder = SqsPriorityClient.builder(mock(SqsClient.class))
+            .withMaxNumberOfMessages(11)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end();
+
+    // Then
+    assertThrows(IllegalArgumentException.class, builder::build);
+  }
+
+  @Test
+  public void receiveBatchesShouldEmitEachReceiveAsOneBatch() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(0, 10), response(10, 4));
+
+    final SqsPriorityClient client = client(sqsClient);
+
+    // When
+    final List<List<Message>> batches = client.receiveBatches().take(2).collectList().block();
+
+    // Then
+    assertEquals(2, batches.size());
+    assertEquals(10, batches.get(0).size());
+    assertEquals(4, batches.get(1).size());
+  }
+
+  @Test
+  public void receiveBatchesShouldCoalesceReceivesFromTheSameQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(0, 10), response(10, 10), response(20, 10));
+
+    final SqsPriorityClient client = client(sqsClient);
+
+    // When
+    final List<Message> batch = client.receiveBatches(25, Duration.ofMinutes(1)).blockFirst();
+
+    // Then
+    assertEquals(25, batch.size());
+    assertEquals("message-0", batch.get(0).body());
+    assertEquals("message-24", batch.get(24).body());
+  }
+
+  @Test
+  public void receiveShouldPauseIdleQueueNoLongerThanItsTargetLatency() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    final AtomicInteger highPriorityReceives = new AtomicInteger();
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      final ReceiveMessageRequest request = invocation.getArgument(0);
+      if (QUEUE_URL.equals(request.queueUrl()) && highPriorityReceives.incrementAndGet() > 2) {
+        return response(message(0).build());
+      }
+
+      return response();
+    });
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("low-priority-queue", LOW_PRIORITY_QUEUE_URL)
+            .withMaxEmptyReceiveCount(1)
+            .withEmptyReceiveTimeout(Duration.ofMinutes(1))
+            .withQueues()
+              .queue("high-priority-queue", Duration.ofMillis(200))
+              .queue("low-priority-queue", Duration.ofMinutes(5))
+            .end()
+            .build();
+
+    // When
+    final Message received = client.receiveMessages().blockFirst(Duration.ofSeconds(5));
+
+    // Then
+    assertEquals("message-0", received.body());
+  }
+
+  @Test
+  public void receiveBatchesShouldNotEmitPartialBatchWhenReceiveIsSkipped() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(
+            response(message(0).body(Strings.repeat("x", 60)).build()),
+            response(message(1).body(Strings.repeat("x", 60)).build()),
+            response(message(2).body(Strings.repeat("x", 60)).build()));
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withMaxInFlightBytes(100)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    // Frees the in-flight budget once receives are skipped because it is exhausted
+    Schedulers.boundedElastic().schedule(() -> {
+      verify(sqsClient, timeout(5_000).times(2)).receiveMessage(any(ReceiveMessageRequest.class));
+      client.deleteMessage("receipt-0").block();
+    });
+
+    // When
+    final List<Message> batch = client.receiveBatches(3, Duration.ofMinutes(1)).blockFirst(Duration.ofSeconds(5));
+
+    // Then
+    assertEquals(3, batch.size());
+  }
+
+  @Test
+  public void receiveBatchesShouldRejectMissingMaxWait() {
+    // Given
+    final SqsPriorityClient client = client(mock(SqsClient.class));
+
+    // Then
+    assertThrows(IllegalArgumentException.class, () -> client.receiveBatches(10, null).blockFirst());
+  }
+
+  @Test
+  public void deleteMessagesShouldDeleteInBatchesOfTen() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(0, 10), response(10, 2));
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = client(sqsClient);
+    final List<Message> messages = client.receiveMessages().take(12).collectList().block();
+
+    // When
+    client.deleteMessages(messages).block();
+
+    // Then
+    final ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient, times(2)).deleteMessageBatch(captor.capture());
+    assertEquals(10, captor.getAllValues().get(0).entries().size());
+    assertEquals(2, captor.getAllValues().get(1).entries().size());
+  }
+
+  @Test
+  public void receiveShouldDivertPoisonMessagesToDeadLetterQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(
+            message(0).attributes(Collections.singletonMap(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, "4")).build(),
+            message(1).attributes(Collections.singletonMap(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, "1")).build()));
+    succeedSends(sqsClient);
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("dead-letter-queue", DEAD_LETTER_QUEUE_URL)
+            .withDeadLetterQueue("dead-letter-queue", 3)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    // When
+    final Message received = client.receiveMessages().blockFirst();
+
+    // Then
+    assertEquals("message-1", received.body());
+
+    final ArgumentCaptor<SendMessageBatchRequest> sendCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+    verify(sqsClient).sendMessageBatch(sendCaptor.capture());
+    assertEquals(DEAD_LETTER_QUEUE_URL, sendCaptor.getValue().queueUrl());
+    assertEquals(1, sendCaptor.getValue().entries().size());
+    assertEquals("message-0", sendCaptor.getValue().entries().get(0).messageBody());
+
+    final ArgumentCaptor<DeleteMessageBatchRequest> deleteCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient).deleteMessageBatch(deleteCaptor.capture());
+    assertEquals(QUEUE_URL, deleteCaptor.getValue().queueUrl());
+    assertEquals("receipt-0", deleteCaptor.getValue().entries().get(0).receiptHandle());
+  }
+
+  @Test
+  public void nackMessageShouldResendWithBackoffDelayAndIncrementedRetryCount() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(retried(message(0), 1).build()));
+    succeedSends(sqsClient);
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 3))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    final ArgumentCaptor<SendMessageBatchRequest> sendCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+    verify(sqsClient).sendMessageBatch(sendCaptor.capture());
+    assertEquals(QUEUE_URL, sendCaptor.getValue().queueUrl());
+
+    final SendMessageBatchRequestEntry entry = sendCaptor.getValue().entries().get(0);
+    assertEquals("message-0", entry.messageBody());
+    assertEquals(20, entry.delaySeconds().intValue());
+    assertEquals("2", entry.messageAttributes().get(RetryPolicy.RETRY_COUNT_ATTRIBUTE).stringValue());
+
+    final ArgumentCaptor<DeleteMessageBatchRequest> deleteCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient).deleteMessageBatch(deleteCaptor.capture());
+    assertEquals(QUEUE_URL, deleteCaptor.getValue().queueUrl());
+    assertEquals("receipt-0", deleteCaptor.getValue().entries().get(0).receiptHandle());
+  }
+
+  @Test
+  public void nackMessageShouldDemoteToNextLowerPriorityQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      final ReceiveMessageRequest request = invocation.getArgument(0);
+      return QUEUE_URL.equals(request.queueUrl()) ? response(message(0).build()) : response();
+    });
+    succeedSends(sqsClient);
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("low-priority-queue", LOW_PRIORITY_QUEUE_URL)
+            .withRetryPolicy(RetryPolicy.demote(Duration.ofSeconds(5), 3))
+            .withQueues()
+              .queue("high-priority-queue", 0.8)
+              .queue("low-priority-queue", 0.2)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    final ArgumentCaptor<SendMessageBatchRequest> sendCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+    verify(sqsClient).sendMessageBatch(sendCaptor.capture());
+    assertEquals(LOW_PRIORITY_QUEUE_URL, sendCaptor.getValue().queueUrl());
+    assertEquals(5, sendCaptor.getValue().entries().get(0).delaySeconds().intValue());
+
+    final ArgumentCaptor<DeleteMessageBatchRequest> deleteCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+    verify(sqsClient).deleteMessageBatch(deleteCaptor.capture());
+    assertEquals(QUEUE_URL, deleteCaptor.getValue().queueUrl());
+  }
+
+  @Test
+  public void nackMessageShouldDivertExhaustedMessagesToDeadLetterQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(retried(message(0), 2).build()));
+    succeedSends(sqsClient);
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("dead-letter-queue", DEAD_LETTER_QUEUE_URL)
+            .withDeadLetterQueue("dead-letter-queue", 3)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 2))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    final ArgumentCaptor<SendMessageBatchRequest> sendCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+    verify(sqsClient).sendMessageBatch(sendCaptor.capture());
+    assertEquals(DEAD_LETTER_QUEUE_URL, sendCaptor.getValue().queueUrl());
+    verify(sqsClient).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+  }
+
+  @Test
+  public void nackMessageShouldReleaseExhaustedMessagesWithoutDeadLetterQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(retried(message(0), 2).build()));
+    succeedReleases(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 2))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> captor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+    verify(sqsClient).changeMessageVisibilityBatch(captor.capture());
+    assertEquals(QUEUE_URL, captor.getValue().queueUrl());
+    assertEquals(0, captor.getValue().entries().get(0).visibilityTimeout().intValue());
+    verify(sqsClient, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+  }
+
+  @Test
+  public void nackMessageShouldDivertMessagesWithInvalidRetryCountToDeadLetterQueue() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(message(0)
+            .messageAttributes(Collections.singletonMap(RetryPolicy.RETRY_COUNT_ATTRIBUTE, MessageAttributeValue.builder()
+                    .dataType("Number")
+                    .stringValue("not-a-number")
+                    .build()))
+            .build()));
+    succeedSends(sqsClient);
+    succeedDeletes(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("dead-letter-queue", DEAD_LETTER_QUEUE_URL)
+            .withDeadLetterQueue("dead-letter-queue", 3)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 3))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    final ArgumentCaptor<SendMessageBatchRequest> sendCaptor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+    verify(sqsClient).sendMessageBatch(sendCaptor.capture());
+    assertEquals(DEAD_LETTER_QUEUE_URL, sendCaptor.getValue().queueUrl());
+  }
+
+  @Test
+  public void nackMessageShouldReleaseMessagesWithoutRoomForRetryCount() {
+    // Given
+    final Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      messageAttributes.put("attribute-" + i, MessageAttributeValue.builder()
+              .dataType("String")
+              .stringValue("value-" + i)
+              .build());
+    }
+
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(message(0).messageAttributes(messageAttributes).build()));
+    succeedReleases(sqsClient);
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 3))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    client.nackMessage(message).block();
+
+    // Then
+    verify(sqsClient).changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class));
+    verify(sqsClient, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+  }
+
+  @Test
+  public void nackMessageShouldFailWhenRetryCannotBeSent() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(message(0).build()));
+    when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder()
+            .failed(BatchResultErrorEntry.builder()
+                    .id("0")
+                    .code("InternalError")
+                    .senderFault(false)
+                    .build())
+            .build());
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withRetryPolicy(RetryPolicy.backoff(Duration.ofSeconds(10), Duration.ofMinutes(1), 3))
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final Message message = client.receiveMessages().blockFirst();
+
+    // When
+    final RuntimeException e = assertThrows(RuntimeException.class, () -> client.nackMessage(message).block());
+
+    // Then
+    assertEquals("Unable to nack 1 message(s)", e.getMessage());
+    verify(sqsClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+  }
+
+  @Test
+  public void receiveShouldPauseWhileInFlightBudgetIsExhausted() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    final AtomicBoolean deleted = new AtomicBoolean();
+    final AtomicBoolean receivedAfterDelete = new AtomicBoolean();
+    final AtomicInteger receives = new AtomicInteger();
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      final int i = receives.getAndIncrement();
+      if (i == 2) {
+        receivedAfterDelete.set(deleted.get());
+      }
+
+      return response(message(i).body(Strings.repeat("x", 60)).build());
+    });
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withMaxInFlightBytes(100)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    // Acknowledges the first message once the budget has been exhausted by two receives
+    Schedulers.boundedElastic().schedule(() -> {
+      verify(sqsClient, timeout(5_000).times(2)).receiveMessage(any(ReceiveMessageRequest.class));
+      deleted.set(true);
+      client.deleteMessage("receipt-0").block();
+    });
+
+    // When
+    final List<Message> received = client.receiveMessages().take(3).collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertEquals(3, received.size());
+    assertTrue(receivedAfterDelete.get());
+  }
+
+  @Test
+  public void receiveShouldReleaseInFlightBudgetOfRedeliveredMessages() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(
+            response(message(0).body(Strings.repeat("x", 60)).build()),
+            response(message(0).receiptHandle("receipt-0-redelivered").body(Strings.repeat("x", 60)).build()),
+            response(message(1).body(Strings.repeat("x", 60)).build()));
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withMaxInFlightBytes(100)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    // When
+    final List<Message> received = client.receiveMessages().take(3).collectList().block(Duration.ofSeconds(5));
+
+    // Then
+    assertEquals(3, received.size());
+    assertEquals("receipt-0-redelivered", received.get(1).receiptHandle());
+  }
+
+  @Test
+  public void receiveBatchesShouldOnlyReceiveWhatSubscriberRequests() throws Exception {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(0, 10));
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withAdaptiveConcurrency(2, 2)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final CountDownLatch firstBatch = new CountDownLatch(1);
+    final CountDownLatch secondBatch = new CountDownLatch(2);
+    final BaseSubscriber<List<Message>> slowSubscriber = new BaseSubscriber<List<Message>>() {
+      @Override
+      protected void hookOnSubscribe(final Subscription subscription) {
+        request(1);
+      }
+
+      @Override
+      protected void hookOnNext(final List<Message> batch) {
+        firstBatch.countDown();
+        secondBatch.countDown();
+      }
+    };
+
+    client.receiveBatches().subscribe(slowSubscriber);
+
+    try {
+      // Then
+      assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+      verify(sqsClient, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
+
+      // When
+      slowSubscriber.request(1);
+
+      // Then
+      assertTrue(secondBatch.await(5, TimeUnit.SECONDS));
+      verify(sqsClient, times(2)).receiveMessage(any(ReceiveMessageRequest.class));
+    } finally {
+      slowSubscriber.dispose();
+      client.close();
+    }
+  }
+
+  @Test
+  public void receiveBatchesShouldNotStartMorePollersThanCurrentLimit() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    final AtomicInteger concurrentReceives = new AtomicInteger();
+    final AtomicInteger maxConcurrentReceives = new AtomicInteger();
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      maxConcurrentReceives.accumulateAndGet(concurrentReceives.incrementAndGet(), Math::max);
+      try {
+        // Partial batches keep the limiter from raising the limit
+        return response(0, 1);
+      } finally {
+        concurrentReceives.decrementAndGet();
+      }
+    });
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withAdaptiveConcurrency(1, 50)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    try {
+      // When
+      final List<List<Message>> batches = client.receiveBatches().take(20).collectList().block(Duration.ofSeconds(5));
+
+      // Then
+      assertEquals(20, batches.size());
+      assertEquals(1, maxConcurrentReceives.get());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void closeShouldCompleteStreamsReceivedByPollers() throws Exception {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(response(0, 1));
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withAdaptiveConcurrency(2, 2)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    final CountDownLatch received = new CountDownLatch(1);
+    final CountDownLatch completed = new CountDownLatch(1);
+    client.receiveMessages().subscribe(message -> received.countDown(), e -> { }, completed::countDown);
+    assertTrue(received.await(5, TimeUnit.SECONDS));
+
+    // When
+    client.close();
+
+    // Then
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertThrows(RejectedExecutionException.class, () -> client.receiveMessages().blockFirst(Duration.ofSeconds(5)));
+  }
+
+  @Test
+  public void receiveMessagesShouldNotReceiveMoreThanCountWithAdaptiveConcurrency() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    final AtomicInteger nextMessage = new AtomicInteger();
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      final ReceiveMessageRequest request = invocation.getArgument(0);
+      return response(nextMessage.getAndAdd(request.maxNumberOfMessages()), request.maxNumberOfMessages());
+    });
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withAdaptiveConcurrency(2, 2)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    try {
+      // When
+      final List<Message> received = client.receiveMessages(15).collectList().block(Duration.ofSeconds(5));
+
+      // Then
+      assertEquals(15, received.size());
+      assertEquals(15, nextMessage.get());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void receiveShouldReleaseCircuitBreakerProbeWhenReceiveFails() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+            .thenThrow(SqsException.builder().statusCode(503).message("Service Unavailable").build())
+            .thenThrow(SqsException.builder().statusCode(403).message("Access Denied").build())
+            .thenReturn(response(0, 1));
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withAdaptiveConcurrency(1, 1)
+            .withCircuitBreaker(1, Duration.ZERO)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+
+    try {
+      assertThrows(SqsException.class, () -> client.receiveMessages().blockFirst(Duration.ofSeconds(5)));
+
+      // When
+      final Message received = client.receiveMessages().blockFirst(Duration.ofSeconds(5));
+
+      // Then
+      assertEquals("message-0", received.body());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void receiveShouldTimeoutQueueOnceMaxEmptyReceiveCountIsReached() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+      final ReceiveMessageRequest request = invocation.getArgument(0);
+      return QUEUE_URL.equals(request.queueUrl()) ? response() : response(0, 1);
+    });
+
+    final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueueUrl("low-priority-queue", LOW_PRIORITY_QUEUE_URL)
+            .withMaxEmptyReceiveCount(1)
+            .withEmptyReceiveTimeout(Duration.ofMinutes(1))
+            .withQueues()
+              .queue("high-priority-queue", 0.9)
+              .queue("low-priority-queue", 0.1)
+            .end()
+            .build();
+
+    // When
+    client.receiveMessages().take(50).blockLast(Duration.ofSeconds(5));
+
+    // Then
+    final ArgumentCaptor<ReceiveMessageRequest> captor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+    verify(sqsClient, atLeastOnce()).receiveMessage(captor.capture());
+    assertEquals(2, captor.getAllValues().stream().filter(request -> QUEUE_URL.equals(request.queueUrl())).count());
+  }
+
+  @Test
+  public void closeShouldStopExportingLagSnapshots() {
+    // Given
+    final VirtualTimeScheduler virtualTime = VirtualTimeScheduler.getOrSet();
+    try {
+      final SqsClient sqsClient = mock(SqsClient.class);
+      final AtomicInteger exports = new AtomicInteger();
+
+      final SqsPriorityClient client = SqsPriorityClient.builder(sqsClient)
+              .withQueueUrl("high-priority-queue", QUEUE_URL)
+              .withLagTracking(Duration.ofMinutes(1), snapshots -> exports.incrementAndGet())
+              .withQueues()
+                .queue("high-priority-queue", 1.0)
+              .end()
+              .build();
+
+      virtualTime.advanceTimeBy(Duration.ofMinutes(2));
+      assertEquals(2, exports.get());
+
+      // When
+      client.close();
+      virtualTime.advanceTimeBy(Duration.ofMinutes(2));
+
+      // Then
+      assertEquals(2, exports.get());
+    } finally {
+      VirtualTimeScheduler.reset();
+    }
+  }
+
+  private static SqsPriorityClient client(final SqsClient sqsClient) {
+    return SqsPriorityClient.builder(sqsClient)
+            .withQueueUrl("high-priority-queue", QUEUE_URL)
+            .withQueues()
+              .queue("high-priority-queue", 1.0)
+            .end()
+            .build();
+  }
+
+  private static ReceiveMessageResponse response(final int start, final int count) {
+    return response(IntStream.range(start, start + count)
+            .mapToObj(i -> message(i).build())
+            .toArray(Message[]::new));
+  }
+
+  private static ReceiveMessageResponse response(final Message... messages) {
+    return ReceiveMessageResponse.builder()
+            .messages(Arrays.asList(messages))
+            .build();
+  }
+
+  private static Message.Builder message(final int i) {
+    return Message.builder()
+            .messageId("id-" + i)
+            .receiptHandle("receipt-" + i)
+            .body("message-" + i);
+  }
+
+  private static Message.Builder retried(final Message.Builder message, final int retryCount) {
+    return message.messageAttributes(Collections.singletonMap(RetryPolicy.RETRY_COUNT_ATTRIBUTE, MessageAttributeValue.builder()
+            .dataType("Number")
+            .stringValue(String.valueOf(retryCount))
+            .build()));
+  }
+
+  private static void succeedSends(final SqsClient sqsClient) {
+    when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+      final SendMessageBatchRequest request = invocation.getArgument(0);
+      return SendMessageBatchResponse.builder()
+              .successful(request.entries().stream()
+                      .map(entry -> SendMessageBatchResultEntry.builder().id(entry.id()).build())
+                      .collect(Collectors.toList()))
+              .build();
+    });
+  }
+
+  private static void succeedReleases(final SqsClient sqsClient) {
+    when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class))).thenAnswer(invocation -> {
+      final ChangeMessageVisibilityBatchRequest request = invocation.getArgument(0);
+      return ChangeMessageVisibilityBatchResponse.builder()
+              .successful(request.entries().stream()
+                      .map(entry -> ChangeMessageVisibilityBatchResultEntry.builder().id(entry.id()).build())
+                      .collect(Collectors.toList()))
+              .build();
+    });
+  }
+
+  private static void succeedDeletes(final SqsClient sqsClient) {
+    when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class))).thenAnswer(invocation -> {
+      final DeleteMessageBatchRequest request = invocation.getArgument(0);
+      return DeleteMessageBatchResponse.builder()
+              .successful(request.entries().stream()
+                      .map(entry -> DeleteMessageBatchResultEntry.builder().id(entry.id()).build())
+                      .collect(Collectors.toList()))
+              .build();
+    });
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveConcurrencyLimiterTest {
+  private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(20);
+
+  @Test
+  public void shouldIncreaseLimitWhileReceivesReturnFullBatches() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, clock::get);
+
+    // When
+    for (int i = 0; i < 100; i++) {
+      limiter.onSuccess(LATENCY, true);
+    }
+
+    // Then
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldNotIncreaseLimitForPartialBatches() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 8, clock::get);
+
+    // When
+    for (int i = 0; i < 100; i++) {
+      limiter.onSuccess(LATENCY, false);
+    }
+
+    // Then
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldHalveLimitWhenThrottledAtMostOncePerSecond() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, clock::get);
+    for (int i = 0; i < 100; i++) {
+      limiter.onSuccess(LATENCY, true);
+    }
+
+    // When
+    limiter.onThrottle();
+    limiter.onThrottle();
+
+    // Then
+    assertEquals(4, limiter.getLimit());
+
+    // When
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    limiter.onThrottle();
+
+    // Then
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldReduceLimitWhenLatencySpikes() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, clock::get);
+    for (int i = 0; i < 100; i++) {
+      limiter.onSuccess(LATENCY, true);
+    }
+
+    // When
+    limiter.onSuccess(LATENCY * 10, true);
+
+    // Then
+    assertEquals(6, limiter.getLimit());
+  }
+}
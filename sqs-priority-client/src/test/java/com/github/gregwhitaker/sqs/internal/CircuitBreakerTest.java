@@ -0,0 +1,95 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void shouldOpenAfterConsecutiveFailures() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock::get);
+
+    // When
+    breaker.onFailure();
+    breaker.onFailure();
+    assertTrue(breaker.allowRequest());
+    breaker.onFailure();
+
+    // Then
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void shouldAllowSingleProbeOnceOpenDurationHasElapsed() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock::get);
+    breaker.onFailure();
+
+    // When
+    clock.addAndGet(Duration.ofSeconds(30).toMillis());
+
+    // Then
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void shouldCloseWhenProbeSucceeds() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock::get);
+    breaker.onFailure();
+    clock.addAndGet(Duration.ofSeconds(30).toMillis());
+    breaker.allowRequest();
+
+    // When
+    breaker.onSuccess();
+
+    // Then
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void shouldAllowNewProbeWhenProbeIsReleased() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock::get);
+    breaker.onFailure();
+    clock.addAndGet(Duration.ofSeconds(30).toMillis());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.isOpen());
+
+    // When
+    breaker.releaseProbe();
+
+    // Then
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InFlightBudgetTest {
+
+  @Test
+  public void shouldNeverBeExhaustedWhenUnlimited() {
+    // Given
+    final InFlightBudget budget = new InFlightBudget(0);
+
+    // When
+    budget.acquire(Long.MAX_VALUE / 2);
+
+    // Then
+    assertFalse(budget.isExhausted());
+    assertTrue(budget.awaitCapacity(Duration.ZERO));
+  }
+
+  @Test
+  public void shouldTimeOutWhileBudgetIsExhausted() {
+    // Given
+    final InFlightBudget budget = new InFlightBudget(1024);
+
+    // When
+    budget.acquire(600);
+    budget.acquire(600);
+
+    // Then
+    assertTrue(budget.isExhausted());
+    assertFalse(budget.awaitCapacity(Duration.ofMillis(10)));
+  }
+
+  @Test
+  public void shouldResumeWhenMessagesAreReleased() throws Exception {
+    // Given
+    final InFlightBudget budget = new InFlightBudget(1024);
+    budget.acquire(600);
+    budget.acquire(600);
+
+    // When
+    final CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> budget.awaitCapacity(Duration.ofSeconds(10)));
+    budget.release(600);
+
+    // Then
+    assertTrue(waiter.get(5, TimeUnit.SECONDS));
+    assertEquals(600, budget.getUsedBytes());
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LagHistogramTest {
+
+  @Test
+  public void shouldCountSmallValuesExactly() {
+    // Given
+    final LagHistogram histogram = new LagHistogram();
+
+    // When
+    for (long i = 0; i < 32; i++) {
+      histogram.record(i);
+    }
+
+    // Then
+    final long[] counts = histogram.getCounts();
+    for (int i = 0; i < 32; i++) {
+      assertEquals(1, counts[i]);
+      assertEquals(i, LagHistogram.highestValueAt(i));
+    }
+
+    assertEquals(31, histogram.getMax());
+    assertEquals(496, histogram.getSum());
+  }
+
+  @Test
+  public void shouldBoundRelativeErrorOfLargeValues() {
+    for (long value = 32; value < 100_000_000L; value = value * 3 / 2 + 7) {
+      // When
+      final long reported = LagHistogram.highestValueAt(LagHistogram.indexOf(value));
+
+      // Then
+      assertTrue(reported >= value);
+      assertTrue((reported - value) / (double) value <= 1.0 / 32);
+    }
+  }
+
+  @Test
+  public void shouldClampOutOfRangeValues() {
+    // Given
+    final LagHistogram histogram = new LagHistogram();
+
+    // When
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    // Then
+    final long[] counts = histogram.getCounts();
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[counts.length - 1]);
+  }
+}
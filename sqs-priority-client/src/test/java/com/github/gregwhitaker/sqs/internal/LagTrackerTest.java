@@ -0,0 +1,64 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LagTrackerTest {
+
+  private final PriorityQueueInfo queue = new PriorityQueueInfo(0, "test-queue", "test-queue-url", 1.0, 0.0);
+  private final LagTracker lagTracker = new LagTracker(Collections.singletonList(queue));
+
+  @Test
+  public void shouldRecordTimeInQueueOfFirstDelivery() {
+    // When
+    lagTracker.onReceive(queue, message(1_000, 1_250, 1));
+
+    // Then
+    assertEquals(250, lagTracker.getTimeInQueue(queue).getSum());
+  }
+
+  @Test
+  public void shouldNotRecordTimeInQueueOfRedelivery() {
+    // Given
+    lagTracker.onReceive(queue, message(1_000, 1_250, 1));
+
+    // When
+    lagTracker.onReceive(queue, message(1_000, 1_250, 2));
+
+    // Then
+    assertEquals(250, lagTracker.getTimeInQueue(queue).getSum());
+  }
+
+  private static Message message(final long sentAt, final long firstReceivedAt, final int receiveCount) {
+    final Map<MessageSystemAttributeName, String> attributes = new EnumMap<>(MessageSystemAttributeName.class);
+    attributes.put(MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(sentAt));
+    attributes.put(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP, String.valueOf(firstReceivedAt));
+    attributes.put(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, String.valueOf(receiveCount));
+
+    return Message.builder()
+            .attributes(attributes)
+            .build();
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyTargetQueueSchedulerTest {
+
+  private final PriorityQueueInfo lowPriorityQueue = new PriorityQueueInfo(0, "low-priority-queue", "low", 0.0, 1.0);
+  private final PriorityQueueInfo highPriorityQueue = new PriorityQueueInfo(1, "high-priority-queue", "high", 0.0, 1.0);
+  private final List<PriorityQueueInfo> queues = Arrays.asList(lowPriorityQueue, highPriorityQueue);
+  private final List<Duration> targets = Arrays.asList(Duration.ofMinutes(5), Duration.ofSeconds(1));
+
+  @Test
+  public void initialSharesShouldBeInverselyProportionalToTargets() {
+    // When
+    final double[] shares = LatencyTargetQueueScheduler.initialShares(Arrays.asList(Duration.ofSeconds(3), Duration.ofSeconds(1)));
+
+    // Then
+    assertEquals(0.25, shares[0], 0.0001);
+    assertEquals(0.75, shares[1], 0.0001);
+  }
+
+  @Test
+  public void shouldShiftPollsToQueueThatIsBehindItsTarget() {
+    // Given
+    final AtomicLong clock = new AtomicLong(1_000_000L);
+    final LatencyTargetQueueScheduler scheduler = new LatencyTargetQueueScheduler(queues, targets, Duration.ofMinutes(1), clock::get);
+    final double initialLowShare = scheduler.getShares()[0];
+
+    // When
+    for (int i = 0; i < 50; i++) {
+      clock.addAndGet(250);
+      scheduler.onReceive(lowPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMinutes(10))));
+      scheduler.onReceive(highPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMillis(100))));
+      scheduler.select();
+    }
+
+    // Then
+    final double[] shares = scheduler.getShares();
+    assertTrue(shares[0] > initialLowShare);
+    assertTrue(shares[0] > shares[1]);
+  }
+
+  @Test
+  public void shouldKeepMinimumShareForQueuesThatAreMeetingTheirTarget() {
+    // Given
+    final AtomicLong clock = new AtomicLong(1_000_000L);
+    final LatencyTargetQueueScheduler scheduler = new LatencyTargetQueueScheduler(queues, targets, Duration.ofMinutes(1), clock::get);
+
+    // When
+    for (int i = 0; i < 200; i++) {
+      clock.addAndGet(250);
+      scheduler.onReceive(lowPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMinutes(30))));
+      scheduler.onReceive(highPriorityQueue, Collections.emptyList());
+      scheduler.select();
+    }
+
+    // Then
+    assertTrue(scheduler.getShares()[1] >= 0.01);
+  }
+
+  @Test
+  public void shouldShiftPollsToIdleQueueAsSoonAsBurstArrives() {
+    // Given
+    final AtomicLong clock = new AtomicLong(1_000_000L);
+    final LatencyTargetQueueScheduler scheduler = new LatencyTargetQueueScheduler(queues, targets, Duration.ofMinutes(1), clock::get);
+
+    for (int i = 0; i < 200; i++) {
+      clock.addAndGet(250);
+      scheduler.onReceive(lowPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMinutes(1))));
+      scheduler.onReceive(highPriorityQueue, Collections.emptyList());
+      scheduler.select();
+    }
+
+    assertTrue(scheduler.getShares()[1] < 0.05);
+
+    // When
+    for (int i = 0; i < 8; i++) {
+      clock.addAndGet(250);
+      scheduler.onReceive(lowPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMinutes(1))));
+      scheduler.onReceive(highPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofSeconds(5))));
+      scheduler.select();
+    }
+
+    // Then
+    final double[] shares = scheduler.getShares();
+    assertTrue(shares[1] > shares[0]);
+  }
+
+  @Test
+  public void shouldForgetWaitTimesOutsideTheWindow() {
+    // Given
+    final AtomicLong clock = new AtomicLong(1_000_000L);
+    final LatencyTargetQueueScheduler scheduler = new LatencyTargetQueueScheduler(queues, targets, Duration.ofMinutes(1), clock::get);
+
+    for (int i = 0; i < 4_000; i++) {
+      clock.addAndGet(1);
+      scheduler.onReceive(highPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofSeconds(10))));
+    }
+
+    // When
+    for (int i = 0; i < 400; i++) {
+      clock.addAndGet(250);
+      scheduler.onReceive(lowPriorityQueue, Collections.singletonList(message(clock.get(), Duration.ofMinutes(1))));
+      scheduler.select();
+    }
+
+    // Then
+    assertTrue(scheduler.getShares()[1] < 0.05);
+  }
+
+  private static Message message(final long receivedAt, final Duration age) {
+    final Map<MessageSystemAttributeName, String> attributes = new EnumMap<>(MessageSystemAttributeName.class);
+    attributes.put(MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(receivedAt - age.toMillis()));
+    attributes.put(MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP, String.valueOf(receivedAt));
+
+    return Message.builder()
+            .attributes(attributes)
+            .build();
+  }
+}
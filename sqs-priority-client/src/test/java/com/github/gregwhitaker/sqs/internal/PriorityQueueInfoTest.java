@@ -0,0 +1,73 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriorityQueueInfoTest {
+
+  @Test
+  public void shouldBeUnavailableWhileInTimeout() {
+    // Given
+    final PriorityQueueInfo queue = new PriorityQueueInfo(0, "test-queue", "test-queue-url", 1.0, 0.0);
+
+    // When
+    queue.timeout(Duration.ofMinutes(1));
+
+    // Then
+    assertFalse(queue.isAvailable());
+  }
+
+  @Test
+  public void shouldBecomeAvailableAndResetEmptyReceivesWhenTimeoutExpires() {
+    // Given
+    final PriorityQueueInfo queue = new PriorityQueueInfo(0, "test-queue", "test-queue-url", 1.0, 0.0);
+    queue.incrementEmptyReceive();
+    queue.incrementEmptyReceive();
+
+    // When
+    queue.timeout(Duration.ZERO);
+
+    // Then
+    assertTrue(queue.isAvailable());
+    assertEquals(0, queue.getEmptyReceiveCnt().sum());
+  }
+
+  @Test
+  public void shouldNotTakeHalfOpenProbeWhenCheckingAvailability() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock::get);
+    final PriorityQueueInfo queue = new PriorityQueueInfo(0, "test-queue", "test-queue-url", 1.0, 0.0, breaker);
+    breaker.onFailure();
+    assertFalse(queue.isAvailable());
+
+    // When
+    clock.addAndGet(Duration.ofSeconds(30).toMillis());
+
+    // Then
+    assertTrue(queue.isAvailable());
+    assertTrue(queue.isAvailable());
+    assertTrue(breaker.allowRequest());
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2021 Greg Whitaker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gregwhitaker.sqs.internal;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueueUrlResolverTest {
+
+  @Test
+  public void shouldNotLookupSuppliedQueueUrls() {
+    // Given
+    final SqsClient sqsClient = mock(SqsClient.class);
+    final Map<String, String> queueUrls = new HashMap<>();
+    queueUrls.put("high-priority-queue", "http://localhost:4566/000000000000/high-priority-queue");
+
+    // When
+    final Map<String, String> resolved = new QueueUrlResolver(sqsClient, queueUrls, null)
+            .resolve(Collections.singletonList("high-priority-queue"))
+            .block();
+
+    // Then
+    assertEquals("http://localhost:4566/000000000000/high-priority-queue", resolved.get("high-priority-queue"));
+    verify(sqsClient, never()).getQueueUrl(any(GetQueueUrlRequest.class));
+  }
+
+  @Test
+  public void shouldLookupMissingQueueUrlsAndCacheThem() throws Exception {
+    // Given
+    final Path cacheFile = Files.createTempDirectory("sqs-priority-client").resolve("queue-urls.properties");
+
+    final SqsClient sqsClient = mock(SqsClient.class);
+    when(sqsClient.getQueueUrl(any(GetQueueUrlRequest.class))).thenAnswer(invocation -> GetQueueUrlResponse.builder()
+            .queueUrl("http://localhost:4566/000000000000/" + invocation.<GetQueueUrlRequest>getArgument(0).queueName())
+            .build());
+
+    // When
+    final Map<String, String> resolved = new QueueUrlResolver(sqsClient, Collections.emptyMap(), cacheFile)
+            .resolve(Arrays.asList("high-priority-queue", "low-priority-queue"))
+            .block();
+
+    // Then
+    assertEquals("http://localhost:4566/000000000000/high-priority-queue", resolved.get("high-priority-queue"));
+    assertEquals("http://localhost:4566/000000000000/low-priority-queue", resolved.get("low-priority-queue"));
+    assertTrue(Files.exists(cacheFile));
+    verify(sqsClient, times(2)).getQueueUrl(any(GetQueueUrlRequest.class));
+  }
+
+  @Test
+  public void shouldResolveQueueUrlsFromCache() throws Exception {
+    // Given
+    final Path cacheFile = Files.createTempDirectory("sqs-priority-client").resolve("queue-urls.properties");
+    Files.write(cacheFile, Collections.singletonList("high-priority-queue=http://localhost:4566/000000000000/high-priority-queue"));
+
+    final SqsClient sqsClient = mock(SqsClient.class);
+
+    // When
+    final Map<String, String> resolved = new QueueUrlResolver(sqsClient, Collections.emptyMap(), cacheFile)
+            .resolve(Collections.singletonList("high-priority-queue"))
+            .block();
+
+    // Then
+    assertEquals("http://localhost:4566/000000000000/high-priority-queue", resolved.get("high-priority-queue"));
+    verify(sqsClient, never()).getQueueUrl(any(GetQueueUrlRequest.class));
+  }
+}